@@ -0,0 +1,213 @@
+/**
+ * Global (Needleman-Wunsch) or local (Smith-Waterman) alignment scored by a substitution matrix with affine gaps (Gotoh). Gap of the
+ * length L costs gapOpen + (L - 1) * gapExtension. Scores are computed in two rows, only the directions of the steps are stored
+ * for every cell (one byte). Local alignment is found by the linear memory kernel first, so directions are stored only for the aligned part.
+ */
+public class AffineAlignment {
+
+    private static final int MINUS_INFINITY = Integer.MIN_VALUE / 4;
+    /**
+     * Directions stored for every cell - the lowest two bits tell where the best score comes from, other two bits tell whether
+     * the horizontal and vertical gap is extended from the previous cell.
+     */
+    private static final byte FROM_DIAGONAL = 0;
+    private static final byte FROM_HORIZONTAL = 1;
+    private static final byte FROM_VERTICAL = 2;
+    private static final byte FROM_START = 3;
+    private static final byte HORIZONTAL_EXTENDED = 4;
+    private static final byte VERTICAL_EXTENDED = 8;
+
+    private final int score;
+    private final StringBuilder alignedFirstSeq;
+    private final StringBuilder alignedSecondSeq;
+    private final int firstStart;
+    private final int secondStart;
+
+    private AffineAlignment(int score, StringBuilder alignedFirstSeq, StringBuilder alignedSecondSeq, int firstStart, int secondStart) {
+        this.score = score;
+        this.alignedFirstSeq = alignedFirstSeq;
+        this.alignedSecondSeq = alignedSecondSeq;
+        this.firstStart = firstStart;
+        this.secondStart = secondStart;
+    }
+
+    public int getScore() { return score; }
+    /**
+     * @return Aligned first sequence written from the end.
+     */
+    public StringBuilder getAlignedFirstSeq() { return alignedFirstSeq; }
+    /**
+     * @return Aligned second sequence written from the end.
+     */
+    public StringBuilder getAlignedSecondSeq() { return alignedSecondSeq; }
+    /**
+     * @return Position (0-based) of the first aligned residue of the first sequence.
+     */
+    public int getFirstStart() { return firstStart; }
+    /**
+     * @return Position (0-based) of the first aligned residue of the second sequence.
+     */
+    public int getSecondStart() { return secondStart; }
+
+    /**
+     * Computes global alignment of the whole sequences.
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     * @param matrix Substitution matrix.
+     * @param gapOpen Cost of the first residue of the gap (positive).
+     * @param gapExtension Cost of every other residue of the gap (positive).
+     * @return Optimal global alignment.
+     */
+    public static AffineAlignment global(char[] firstSeq, char[] secondSeq, ScoringMatrix matrix, int gapOpen, int gapExtension) {
+        return align(firstSeq, 0, firstSeq.length, secondSeq, 0, secondSeq.length, matrix, gapOpen, gapExtension, false);
+    }
+
+    /**
+     * Computes local alignment. Linear memory kernel finds the score and the end of the alignment, the same kernel on the reversed
+     * sequences finds its start and only this part is aligned with stored directions.
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     * @param matrix Substitution matrix.
+     * @param gapOpen Cost of the first residue of the gap (positive).
+     * @param gapExtension Cost of every other residue of the gap (positive).
+     * @return Optimal local alignment, empty if no pair of residues has positive score.
+     */
+    public static AffineAlignment local(char[] firstSeq, char[] secondSeq, ScoringMatrix matrix, int gapOpen, int gapExtension) {
+        SmithWatermanKernel forward = new SmithWatermanKernel(firstSeq, matrix, gapOpen, gapExtension);
+        int score = forward.score(secondSeq);
+        if (score == 0) {return new AffineAlignment(0, new StringBuilder(), new StringBuilder(), 0, 0);}
+        int firstEnd = forward.getQueryEnd();
+        int secondEnd = forward.getTargetEnd();
+
+        //Start of the alignment is the end of the best alignment of the reversed prefixes
+        SmithWatermanKernel backward = new SmithWatermanKernel(reversedPrefix(firstSeq, firstEnd + 1), matrix, gapOpen, gapExtension);
+        backward.score(reversedPrefix(secondSeq, secondEnd + 1));
+        int firstStart = firstEnd - backward.getQueryEnd();
+        int secondStart = secondEnd - backward.getTargetEnd();
+
+        AffineAlignment alignment = align(firstSeq, firstStart, firstEnd + 1, secondSeq, secondStart, secondEnd + 1, matrix, gapOpen, gapExtension, false);
+        if (alignment.score == score) {return alignment;}
+        //Backward search found another alignment with the same score, which does not end at the same place
+        return align(firstSeq, 0, firstEnd + 1, secondSeq, 0, secondEnd + 1, matrix, gapOpen, gapExtension, true);
+    }
+
+    private static char[] reversedPrefix(char[] sequence, int length) {
+        char[] reversed = new char[length];
+        for (int i = 0; i < length; i++) {
+            reversed[i] = sequence[length - 1 - i];
+        }
+        return reversed;
+    }
+
+    /**
+     * Aligns firstSeq[firstFrom, firstTo) with secondSeq[secondFrom, secondTo) by dynamic programming with three states.
+     * @param local True for local alignment, false for global.
+     * @return Optimal alignment of the parts.
+     */
+    private static AffineAlignment align(char[] firstSeq, int firstFrom, int firstTo, char[] secondSeq, int secondFrom, int secondTo,
+                                         ScoringMatrix matrix, int gapOpen, int gapExtension, boolean local) {
+        int rows = firstTo - firstFrom;
+        int columns = secondTo - secondFrom;
+        int[] secondIndices = new int[columns];
+        for (int j = 0; j < columns; j++) {
+            secondIndices[j] = matrix.indexOf(secondSeq[secondFrom + j]);
+        }
+        byte[][] directions = new byte[rows + 1][columns + 1];
+
+        //Initialization - first row and column are gaps for global alignment
+        int[] previous = new int[columns + 1];
+        int[] current = new int[columns + 1];
+        int[] vertical = new int[columns + 1];
+        directions[0][0] = FROM_START;
+        //Gap is extended unless opening of the new gap is cheaper, same as in the recurrence
+        int boundaryStep = Math.min(gapOpen, gapExtension);
+        byte boundaryExtended = gapExtension < gapOpen ? (byte) 1 : (byte) 0;
+        for (int j = 1; j <= columns; j++) {
+            previous[j] = local ? 0 : previous[j - 1] - (j > 1 ? boundaryStep : gapOpen);
+            directions[0][j] = local ? FROM_START : (byte) (FROM_HORIZONTAL | (j > 1 ? boundaryExtended * HORIZONTAL_EXTENDED : 0));
+            vertical[j] = MINUS_INFINITY;
+        }
+
+        int best = 0;
+        int bestRow = 0;
+        int bestColumn = 0;
+        for (int i = 1; i <= rows; i++) {
+            int[] scores = matrix.row(matrix.indexOf(firstSeq[firstFrom + i - 1]));
+            current[0] = local ? 0 : previous[0] - (i > 1 ? boundaryStep : gapOpen);
+            directions[i][0] = local ? FROM_START : (byte) (FROM_VERTICAL | (i > 1 ? boundaryExtended * VERTICAL_EXTENDED : 0));
+            int horizontal = MINUS_INFINITY;
+            for (int j = 1; j <= columns; j++) {
+                byte direction = 0;
+                int opened = current[j - 1] - gapOpen;
+                int extended = horizontal - gapExtension;
+                if (extended > opened) {
+                    horizontal = extended;
+                    direction |= HORIZONTAL_EXTENDED;
+                } else {horizontal = opened;}
+                opened = previous[j] - gapOpen;
+                extended = vertical[j] - gapExtension;
+                if (extended > opened) {
+                    vertical[j] = extended;
+                    direction |= VERTICAL_EXTENDED;
+                } else {vertical[j] = opened;}
+
+                int value = previous[j - 1] + scores[secondIndices[j - 1]];
+                byte from = FROM_DIAGONAL;
+                if (horizontal > value) {
+                    value = horizontal;
+                    from = FROM_HORIZONTAL;
+                }
+                if (vertical[j] > value) {
+                    value = vertical[j];
+                    from = FROM_VERTICAL;
+                }
+                if (local && value <= 0) {
+                    value = 0;
+                    from = FROM_START;
+                }
+                current[j] = value;
+                directions[i][j] = (byte) (direction | from);
+                if (local && value > best) {
+                    best = value;
+                    bestRow = i;
+                    bestColumn = j;
+                }
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        //Backtracking of one path, alignment is built from the end
+        StringBuilder alignedFirstSeq = new StringBuilder();
+        StringBuilder alignedSecondSeq = new StringBuilder();
+        int i = local ? bestRow : rows;
+        int j = local ? bestColumn : columns;
+        byte state = FROM_DIAGONAL;
+        while (i > 0 || j > 0) {
+            byte direction = directions[i][j];
+            if (state == FROM_HORIZONTAL) {
+                alignedFirstSeq.append('-');
+                alignedSecondSeq.append(secondSeq[secondFrom + j - 1]);
+                state = (direction & HORIZONTAL_EXTENDED) != 0 ? FROM_HORIZONTAL : FROM_DIAGONAL;
+                j--;
+            } else if (state == FROM_VERTICAL) {
+                alignedFirstSeq.append(firstSeq[firstFrom + i - 1]);
+                alignedSecondSeq.append('-');
+                state = (direction & VERTICAL_EXTENDED) != 0 ? FROM_VERTICAL : FROM_DIAGONAL;
+                i--;
+            } else {
+                int from = direction & 3;
+                if (from == FROM_START) {break;}
+                if (from == FROM_DIAGONAL) {
+                    alignedFirstSeq.append(firstSeq[firstFrom + i - 1]);
+                    alignedSecondSeq.append(secondSeq[secondFrom + j - 1]);
+                    i--;
+                    j--;
+                } else {state = (byte) from;}
+            }
+        }
+        int score = local ? best : previous[columns];
+        return new AffineAlignment(score, alignedFirstSeq, alignedSecondSeq, firstFrom + i, secondFrom + j);
+    }
+}
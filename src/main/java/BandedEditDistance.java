@@ -0,0 +1,72 @@
+/**
+ * Edit distance bounded by a maximal distance k (Ukkonen). Path with the distance at most k cannot leave the diagonals -k ... k of
+ * the matrix of dynamic programming, so only the band of width 2k + 1 is computed, two rows at once. Computation stops when every
+ * cell of the row is bigger than k, so dissimilar sequences are rejected early and similar sequences cost O(k * n).
+ */
+public class BandedEditDistance {
+
+    /**
+     * Result for the sequences with edit distance bigger than the maximal distance.
+     */
+    public static final int OVER_LIMIT = -1;
+
+    /**
+     * Calculates edit distance if it is at most maxDistance.
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     * @param maxDistance Maximal distance k, not negative.
+     * @return Edit distance of the sequences or OVER_LIMIT if it is bigger than maxDistance.
+     */
+    public static int distance(char[] firstSeq, char[] secondSeq, int maxDistance) {
+        //Length difference needs at least the same number of gaps
+        if (Math.abs(firstSeq.length - secondSeq.length) > maxDistance) {return OVER_LIMIT;}
+        int k = Math.min(maxDistance, Math.max(firstSeq.length, secondSeq.length));
+        int width = 2 * k + 1;
+        //Values bigger than k are stored as k + 1
+        int over = k + 1;
+
+        //Cell (i, j) is stored at the position j - i + k of the row i
+        int[] previous = new int[width];
+        int[] current = new int[width];
+        for (int d = 0; d < width; d++) {
+            int j = d - k;
+            previous[d] = j >= 0 && j <= secondSeq.length ? j : over;
+        }
+
+        for (int i = 1; i <= firstSeq.length; i++) {
+            char symbol = firstSeq[i - 1];
+            int rowMinimum = over;
+            int from = Math.max(0, k - i);
+            int to = Math.min(width - 1, secondSeq.length - i + k);
+            for (int d = 0; d < from; d++) {
+                current[d] = over;
+            }
+            for (int d = from; d <= to; d++) {
+                int j = i + d - k;
+                int value;
+                if (j == 0) {
+                    value = i;
+                } else {
+                    int sameSymbol = symbol == secondSeq[j - 1] ? 0 : 1;
+                    value = previous[d] + sameSymbol;
+                    if (d + 1 < width) {value = Math.min(value, previous[d + 1] + 1);}
+                    if (d > 0) {value = Math.min(value, current[d - 1] + 1);}
+                }
+                current[d] = Math.min(value, over);
+                rowMinimum = Math.min(rowMinimum, current[d]);
+            }
+            for (int d = Math.max(from, to + 1); d < width; d++) {
+                current[d] = over;
+            }
+
+            //Early termination - every path goes through this row
+            if (rowMinimum > k) {return OVER_LIMIT;}
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        int distance = previous[secondSeq.length - firstSeq.length + k];
+        return distance > maxDistance ? OVER_LIMIT : distance;
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Alignment of many pairs of molecules given by a list of pairs of identifiers. Pairs are read and aligned in batches on a pool of
+ * threads, every thread has its own PairwiseAligner with reusable buffers. Results of a batch are written in the order of the list
+ * before the next batch is read, so the list and the results do not have to fit into memory.
+ */
+public class BatchAlignment {
+
+    /**
+     * Number of pairs read and aligned at once.
+     */
+    private static final int BATCH_PAIRS = 1 << 12;
+
+    /**
+     * Aligns every pair from the list and writes one csv line for each of them.
+     * @param molecules Molecules which can be used in the pairs.
+     * @param pairList Reader of the list, every line contains two identifiers separated by a tab (or by spaces if the line does not
+     *                 contain a tab). Identifier is the first word of the description (e.g. accession number), see identifiers.
+     * @param writer Writer of the csv file.
+     * @return Number of aligned pairs. Pairs with unknown or ambiguous identifiers are written without results.
+     * @throws IOException Reading of the list or writing of the results.
+     */
+    public static int alignPairs(List<FastaData> molecules, BufferedReader pairList, BufferedWriter writer) throws IOException {
+        Map<String, FastaData> identifiers = identifiers(molecules);
+
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        PairwiseAligner[] aligners = new PairwiseAligner[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            aligners[t] = new PairwiseAligner();
+        }
+        String[] firstIds = new String[BATCH_PAIRS];
+        String[] secondIds = new String[BATCH_PAIRS];
+        char[][] firstSeqs = new char[BATCH_PAIRS][];
+        char[][] secondSeqs = new char[BATCH_PAIRS][];
+        String[] results = new String[BATCH_PAIRS];
+
+        writer.write("First,Second,Distance,Identity,Cigar");
+        writer.newLine();
+        int aligned = 0;
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            while (true) {
+                //Reading of the batch, sequences used more times in the batch are converted once
+                Map<FastaData, char[]> sequences = new HashMap<>();
+                int pairs = 0;
+                String line;
+                while (pairs < BATCH_PAIRS && (line = pairList.readLine()) != null) {
+                    String[] ids = line.indexOf('\t') >= 0 ? line.split("\t") : line.trim().split(" +");
+                    if (ids.length < 2 || ids[0].trim().isEmpty()) {continue;}
+                    firstIds[pairs] = ids[0].trim();
+                    secondIds[pairs] = ids[1].trim();
+                    firstSeqs[pairs] = sequenceOf(firstIds[pairs], identifiers, sequences);
+                    secondSeqs[pairs] = sequenceOf(secondIds[pairs], identifiers, sequences);
+                    pairs++;
+                }
+                if (pairs == 0) {break;}
+
+                //Every thread takes the next pair of the batch until all are aligned
+                int batchPairs = pairs;
+                AtomicInteger nextPair = new AtomicInteger();
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threadCount; t++) {
+                    PairwiseAligner aligner = aligners[t];
+                    futures.add(pool.submit(() -> {
+                        for (int p = nextPair.getAndIncrement(); p < batchPairs; p = nextPair.getAndIncrement()) {
+                            if (firstSeqs[p] == null || secondSeqs[p] == null) {
+                                results[p] = ",,";
+                                continue;
+                            }
+                            aligner.align(firstSeqs[p], secondSeqs[p]);
+                            results[p] = aligner.getDistance() + "," + String.format(Locale.ROOT, "%.4f", aligner.getIdentity())
+                                    + "," + aligner.getCigar();
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+
+                for (int p = 0; p < batchPairs; p++) {
+                    writer.write(csvValue(firstIds[p]) + "," + csvValue(secondIds[p]) + "," + results[p]);
+                    writer.newLine();
+                    if (firstSeqs[p] != null && secondSeqs[p] != null) {aligned++;}
+                    firstSeqs[p] = null;
+                    secondSeqs[p] = null;
+                    results[p] = null;
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        return aligned;
+    }
+
+    /**
+     * Maps identifiers to the molecules. Identifier is the first word of the description without the '>' or the part of this word
+     * before the first '|' (e.g. 2MKG_1 in ">2MKG_1|Chain A|..."). Identifier of more molecules is mapped to null, so a pair is
+     * never aligned with an arbitrarily chosen molecule.
+     * @param molecules Loaded molecules.
+     * @return Identifier -> molecule, or null for ambiguous identifiers.
+     */
+    private static Map<String, FastaData> identifiers(List<FastaData> molecules) {
+        Map<String, FastaData> identifiers = new HashMap<>();
+        for (FastaData molecule : molecules) {
+            String word = molecule.getDescription().substring(1).trim().split("\\s+", 2)[0];
+            if (word.isEmpty()) {continue;}
+            addIdentifier(identifiers, word, molecule);
+            int bar = word.indexOf('|');
+            if (bar > 0) {addIdentifier(identifiers, word.substring(0, bar), molecule);}
+        }
+        return identifiers;
+    }
+
+    private static void addIdentifier(Map<String, FastaData> identifiers, String identifier, FastaData molecule) {
+        //Second molecule with the same identifier makes it ambiguous
+        if (identifiers.containsKey(identifier)) {
+            identifiers.put(identifier, null);
+        } else {
+            identifiers.put(identifier, molecule);
+        }
+    }
+
+    /**
+     * Finds the sequence of the molecule with the identifier.
+     * @param identifier First word of the description or its part before '|'.
+     * @param identifiers Identifiers of the molecules.
+     * @param sequences Sequences converted in the current batch.
+     * @return Sequence in upper case, null if no molecule or more molecules have the identifier.
+     */
+    private static char[] sequenceOf(String identifier, Map<String, FastaData> identifiers, Map<FastaData, char[]> sequences) {
+        FastaData molecule = identifiers.get(identifier);
+        if (molecule == null) {return null;}
+        return sequences.computeIfAbsent(molecule, m -> m.getSequence().toUpperCase().toCharArray());
+    }
+
+    private static String csvValue(String value) { return "\"" + value.replace("\"", "\"\"") + "\""; }
+}
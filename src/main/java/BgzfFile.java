@@ -0,0 +1,311 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * File compressed in BGZF format (blocked gzip used by samtools). File consists of independent gzip blocks with at most 64 KiB
+ * of data, so blocks can be decompressed in parallel and reading can start at any block. Position in the decompressed data is
+ * translated into virtual offset (position of the block in the file shifted by 16 bits + position in the block) by the block index.
+ */
+public class BgzfFile {
+
+    /**
+     * Loaded block indexes of BGZF files. Null value means that the file is not in BGZF format.
+     */
+    private static final Map<String, BgzfFile> openedFiles = new HashMap<>();
+
+    /**
+     * Threads decompressing blocks ahead of reading. Pool is not shared with the fork-join computations, so waiting for the file
+     * does not block them. Threads are daemons, so the pool does not have to be shut down.
+     */
+    private static final ExecutorService DECOMPRESSION_POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "bgzf-decompression");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final Path path;
+    /**
+     * Position of every block in the compressed file.
+     */
+    private final long[] blockOffsets;
+    /**
+     * Position of the data of every block in the decompressed data. Contains one more value with size of the decompressed data.
+     */
+    private final long[] dataOffsets;
+
+    private BgzfFile(Path path, long[] blockOffsets, long[] dataOffsets) {
+        this.path = path;
+        this.blockOffsets = blockOffsets;
+        this.dataOffsets = dataOffsets;
+    }
+
+    /**
+     * Checks whether the file is compressed by gzip (BGZF files included).
+     * @param fileName Name of the file in the InputFiles directory.
+     * @return True if file starts with gzip magic number.
+     * @throws IOException Reading of the file.
+     */
+    public static boolean isGzip(String fileName) throws IOException {
+        try (InputStream input = Files.newInputStream(Paths.get("InputFiles", fileName))) {
+            return input.read() == 0x1f && input.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Gets the BGZF file with loaded block index.
+     * @param fileName Name of the file in the InputFiles directory.
+     * @return BGZF file or null if the file is not in BGZF format.
+     * @throws IOException Reading of the file.
+     */
+    public static synchronized BgzfFile forFile(String fileName) throws IOException {
+        if (!openedFiles.containsKey(fileName)) {
+            openedFiles.put(fileName, indexBlocks(Paths.get("InputFiles", fileName)));
+        }
+        return openedFiles.get(fileName);
+    }
+
+    /**
+     * Reads headers of all blocks and creates the block index. Blocks are not decompressed.
+     * @param path Path to the file.
+     * @return BGZF file or null if the file is not in BGZF format.
+     * @throws IOException Reading of the file.
+     */
+    private static BgzfFile indexBlocks(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] blockOffsets = new long[16];
+            long[] dataOffsets = new long[17];
+            int blockCount = 0;
+            long blockOffset = 0;
+            ByteBuffer header = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer footer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (blockOffset < size) {
+                int blockSize = blockSize(channel, blockOffset, header);
+                if (blockSize == -1) {return null;}
+                footer.clear();
+                channel.read(footer, blockOffset + blockSize - 4);
+
+                if (blockCount == blockOffsets.length) {
+                    blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+                    dataOffsets = Arrays.copyOf(dataOffsets, blockCount * 2 + 1);
+                }
+                blockOffsets[blockCount] = blockOffset;
+                dataOffsets[blockCount + 1] = dataOffsets[blockCount] + (footer.getInt(0) & 0xFFFFFFFFL);
+                blockCount++;
+                blockOffset += blockSize;
+            }
+            return new BgzfFile(path, Arrays.copyOf(blockOffsets, blockCount), Arrays.copyOf(dataOffsets, blockCount + 1));
+        }
+    }
+
+    /**
+     * Reads the header of the block.
+     * @param channel Channel of the opened file.
+     * @param blockOffset Position of the block.
+     * @param header Buffer for the header.
+     * @return Size of the whole block or -1 if the header is not a BGZF header.
+     * @throws IOException Reading of the file.
+     */
+    private static int blockSize(FileChannel channel, long blockOffset, ByteBuffer header) throws IOException {
+        header.clear();
+        if (channel.read(header, blockOffset) < 18) {return -1;}
+        //Magic number, deflate method, extra field flag, extra subfield 'BC' with size of the block
+        if ((header.get(0) & 0xFF) != 0x1f || (header.get(1) & 0xFF) != 0x8b || header.get(2) != 8 || (header.get(3) & 4) == 0) {return -1;}
+        if (header.getShort(10) != 6 || header.get(12) != 'B' || header.get(13) != 'C' || header.getShort(14) != 2) {return -1;}
+        return (header.getShort(16) & 0xFFFF) + 1;
+    }
+
+    /**
+     * Gets size of the decompressed data.
+     * @return Number of bytes.
+     */
+    public long getDataSize() { return dataOffsets[dataOffsets.length - 1]; }
+
+    /**
+     * Translates position in the decompressed data into BGZF virtual offset.
+     * @param dataPosition Position in the decompressed data.
+     * @return Position of the block shifted by 16 bits + position inside of the block.
+     */
+    public long virtualOffset(long dataPosition) {
+        int block = blockOf(dataPosition);
+        return (blockOffsets[block] << 16) | (dataPosition - dataOffsets[block]);
+    }
+
+    /**
+     * Finds the block containing the position.
+     * @param dataPosition Position in the decompressed data.
+     * @return Number of the block.
+     */
+    private int blockOf(long dataPosition) {
+        int block = Arrays.binarySearch(dataOffsets, 0, blockOffsets.length, dataPosition);
+        if (block < 0) {block = -block - 2;}
+        //Empty blocks (e.g. end of file marker) share the position with the next block
+        while (block + 1 < blockOffsets.length && dataOffsets[block + 1] == dataPosition) {block++;}
+        return Math.max(block, 0);
+    }
+
+    /**
+     * Opens stream of the decompressed data starting at the position. Following blocks are decompressed in parallel ahead of reading.
+     * @param dataPosition Position in the decompressed data.
+     * @return Stream of the decompressed data.
+     * @throws IOException Opening of the file.
+     */
+    public InputStream openStream(long dataPosition) throws IOException {
+        if (dataPosition >= getDataSize()) {return InputStream.nullInputStream();}
+        long virtualOffset = virtualOffset(dataPosition);
+        return new BlockInputStream(FileChannel.open(path, StandardOpenOption.READ), blockOf(dataPosition), (int) (virtualOffset & 0xFFFF));
+    }
+
+    /**
+     * Decompresses one block and checks its checksum.
+     * @param channel Channel of the opened file.
+     * @param block Number of the block.
+     * @return Decompressed data.
+     * @throws IOException Reading of the file or corrupted block.
+     */
+    private byte[] decompressBlock(FileChannel channel, int block) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+        int blockSize = blockSize(channel, blockOffsets[block], header);
+        if (blockSize == -1) {throw new IOException("Invalid BGZF block.");}
+        ByteBuffer compressed = ByteBuffer.allocate(blockSize - 18).order(ByteOrder.LITTLE_ENDIAN);
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, blockOffsets[block] + 18 + compressed.position()) < 0) {throw new IOException("Truncated BGZF block.");}
+        }
+
+        byte[] data = new byte[(int) (dataOffsets[block + 1] - dataOffsets[block])];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed.array(), 0, blockSize - 26);
+            int inflated = 0;
+            while (inflated < data.length && !inflater.finished()) {
+                int count = inflater.inflate(data, inflated, data.length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {break;}
+                inflated += count;
+            }
+            if (inflated != data.length) {throw new IOException("Corrupted BGZF block.");}
+        }
+        catch (DataFormatException e) {
+            throw new IOException("Corrupted BGZF block.", e);
+        }
+        finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if ((int) crc.getValue() != compressed.getInt(blockSize - 26)) {throw new IOException("Corrupted BGZF block.");}
+        return data;
+    }
+
+    /**
+     * Stream which decompresses blocks in order. Number of blocks decompressed ahead grows while the stream is read, so short reads
+     * decompress only few blocks. Closing waits for the blocks which are being decompressed, so the channel is not used after it is closed.
+     */
+    private class BlockInputStream extends InputStream {
+        private final FileChannel channel;
+        private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        private volatile boolean closed = false;
+        private final int maxAhead = 2 * Runtime.getRuntime().availableProcessors();
+        private int ahead = 1;
+        private int nextBlock;
+        private byte[] current = new byte[0];
+        private int position = 0;
+        private int skip;
+
+        BlockInputStream(FileChannel channel, int firstBlock, int skip) {
+            this.channel = channel;
+            this.nextBlock = firstBlock;
+            this.skip = skip;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            while (position == current.length) {
+                if (!nextData()) {return -1;}
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, bytes, offset, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Takes next decompressed block and plans decompression of following blocks.
+         * @return False if there are no more blocks.
+         * @throws IOException Reading or decompression of the block.
+         */
+        private boolean nextData() throws IOException {
+            while (pending.size() < ahead && nextBlock < blockOffsets.length) {
+                int block = nextBlock++;
+                //Blocks planned before closing are not decompressed at all
+                pending.add(DECOMPRESSION_POOL.submit(() -> closed ? null : decompressBlock(channel, block)));
+            }
+            if (pending.isEmpty()) {return false;}
+            ahead = Math.min(ahead * 2, maxAhead);
+
+            try {
+                current = pending.poll().get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {throw (IOException) e.getCause();}
+                throw new IOException(e.getCause());
+            }
+            position = Math.min(skip, current.length);
+            skip -= position;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            boolean interrupted = false;
+            for (Future<byte[]> future : pending) {
+                //Running decompression has to finish even if this thread is interrupted
+                while (!future.isDone()) {
+                    try {
+                        future.get();
+                    }
+                    catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                    catch (ExecutionException e) {
+                        //Data of the block are not needed anymore
+                    }
+                }
+            }
+            pending.clear();
+            channel.close();
+            if (interrupted) {Thread.currentThread().interrupt();}
+        }
+    }
+}
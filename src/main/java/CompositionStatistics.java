@@ -0,0 +1,263 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes composition statistics of molecules (counts of residues, GC content, molecular weight and fraction of low complexity
+ * regions). Every sequence is read only once in chunks and all statistics are updated by table lookups for every residue.
+ * Molecules are processed in parallel.
+ */
+public class CompositionStatistics {
+
+    /**
+     * Residues counted separately, other characters are counted together. Lower case residues are counted as upper case.
+     */
+    public static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ*-";
+    private static final int OTHER = ALPHABET.length();
+    private static final byte[] CODES = new byte[256];
+
+    /**
+     * Average masses of amino acid residues (without water) in daltons, by their code in the alphabet.
+     */
+    private static final double[] PROTEIN_MASSES = new double[OTHER + 1];
+    /**
+     * Average masses of nucleotides in DNA strand (without water) in daltons, U is counted as in RNA.
+     */
+    private static final double[] NUCLEOTIDE_MASSES = new double[OTHER + 1];
+    private static final double WATER_MASS = 18.01524;
+
+    /**
+     * Length of the window in which complexity (Shannon entropy of residues) is measured.
+     */
+    private static final int WINDOW = 12;
+    private static final double PROTEIN_ENTROPY_LIMIT = 2.2;
+    private static final double NUCLEOTIDE_ENTROPY_LIMIT = 1.5;
+    /**
+     * Values of c * log2(c) for counts in the window, in fixed point with 32 fractional bits, so their sum does not drift.
+     */
+    private static final long[] COUNT_LOG_COUNT = new long[WINDOW + 1];
+    /**
+     * Change of the sum when count c is increased by one (or decreased to c).
+     */
+    private static final long[] COUNT_DELTA = new long[WINDOW];
+    /**
+     * Window has low complexity if its sum of c * log2(c) is bigger than the limit, which corresponds to the entropy limit.
+     * Limits are slightly increased, so windows with entropy exactly at the limit are not affected by rounding.
+     */
+    private static final long PROTEIN_SUM_LIMIT;
+    private static final long NUCLEOTIDE_SUM_LIMIT;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            CODES[i] = (byte) OTHER;
+        }
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            CODES[ALPHABET.charAt(i)] = (byte) i;
+            CODES[Character.toLowerCase(ALPHABET.charAt(i))] = (byte) i;
+        }
+
+        String aminoAcids = "ARNDCEQGHILKMFPSTWYVUOBZJX";
+        double[] aminoAcidMasses = {71.0788, 156.1875, 114.1038, 115.0886, 103.1388, 129.1155, 128.1307, 57.0519, 137.1411, 113.1594,
+                113.1594, 128.1741, 131.1926, 147.1766, 97.1167, 87.0782, 101.1051, 186.2132, 163.1760, 99.1326, 150.0388, 237.3018,
+                114.5962, 128.6231, 113.1594, 110.0};
+        for (int i = 0; i < aminoAcids.length(); i++) {
+            PROTEIN_MASSES[CODES[aminoAcids.charAt(i)]] = aminoAcidMasses[i];
+        }
+
+        String nucleotides = "ACGTUN";
+        double[] nucleotideMasses = {313.21, 289.18, 329.21, 304.2, 306.17, 308.95};
+        for (int i = 0; i < nucleotides.length(); i++) {
+            NUCLEOTIDE_MASSES[CODES[nucleotides.charAt(i)]] = nucleotideMasses[i];
+        }
+
+        for (int c = 1; c <= WINDOW; c++) {
+            COUNT_LOG_COUNT[c] = c * log2Fixed(c);
+            COUNT_DELTA[c - 1] = COUNT_LOG_COUNT[c] - COUNT_LOG_COUNT[c - 1];
+        }
+        PROTEIN_SUM_LIMIT = sumLimit(PROTEIN_ENTROPY_LIMIT);
+        NUCLEOTIDE_SUM_LIMIT = sumLimit(NUCLEOTIDE_ENTROPY_LIMIT);
+    }
+
+    private static long log2Fixed(double value) { return Math.round(Math.log(value) / Math.log(2) * (1L << 32)); }
+
+    private static long sumLimit(double entropyLimit) {
+        return WINDOW * log2Fixed(WINDOW) - Math.round(entropyLimit * WINDOW * (1L << 32)) + (1L << 12);
+    }
+
+    /**
+     * Computes statistics of all molecules on a pool of threads.
+     * @param molecules Molecules in question.
+     * @return Statistics in the order of the molecules.
+     */
+    public static List<SequenceStatistics> compute(List<FastaData> molecules) {
+        SequenceStatistics[] results = new SequenceStatistics[molecules.size()];
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), molecules.size()));
+        AtomicInteger nextMolecule = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(pool.submit(() -> {
+                    //Every thread has its own buffer for the chunks of sequences
+                    byte[] buffer = new byte[CHUNK_SIZE];
+                    for (int m = nextMolecule.getAndIncrement(); m < results.length; m = nextMolecule.getAndIncrement()) {
+                        results[m] = compute(molecules.get(m), buffer);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        List<SequenceStatistics> statistics = new ArrayList<>(results.length);
+        for (SequenceStatistics result : results) {
+            statistics.add(result);
+        }
+        return statistics;
+    }
+
+    /**
+     * Computes statistics of one molecule in one pass through the sequence.
+     * @param molecule Molecule in question.
+     * @param buffer Buffer for the chunks of the sequence.
+     * @return Statistics of the molecule.
+     */
+    private static SequenceStatistics compute(FastaData molecule, byte[] buffer) {
+        int length = molecule.getSequenceLength();
+        int[] counts = new int[OTHER + 1];
+
+        //Sliding window for the complexity, entropy = log2(WINDOW) - sum(c * log2(c)) / WINDOW
+        //Window starts filled with other characters, which are removed by the first residues
+        byte[] window = new byte[WINDOW];
+        Arrays.fill(window, (byte) OTHER);
+        int[] windowCounts = new int[OTHER + 1];
+        windowCounts[OTHER] = WINDOW;
+        long windowSum = COUNT_LOG_COUNT[WINDOW];
+        int slot = 0;
+        //Positions up to which residues are already counted as low complexity, for both limits
+        int proteinCovered = 0;
+        int nucleotideCovered = 0;
+        int proteinLowComplexity = 0;
+        int nucleotideLowComplexity = 0;
+
+        PackedSequence packed = molecule.getPackedSequence();
+        for (int start = 0; start < length; start += buffer.length) {
+            int end = Math.min(length, start + buffer.length);
+            if (packed != null) {
+                packed.copyTo(start, end, buffer, 0);
+            } else {
+                //Indexed mode, only the chunk is read
+                byte[] chunk = molecule.getSubsequence(start, end).getBytes(StandardCharsets.ISO_8859_1);
+                System.arraycopy(chunk, 0, buffer, 0, chunk.length);
+            }
+
+            for (int i = start; i < end; i++) {
+                int code = CODES[buffer[i - start] & 0xFF];
+                counts[code]++;
+
+                int removed = window[slot];
+                windowSum -= COUNT_DELTA[--windowCounts[removed]];
+                windowSum += COUNT_DELTA[windowCounts[code]++];
+                window[slot] = (byte) code;
+                if (++slot == WINDOW) {slot = 0;}
+                if (i < WINDOW - 1) {continue;}
+
+                //Without branches, because low complexity windows are not predictable
+                int proteinLow = (int) ((PROTEIN_SUM_LIMIT - windowSum) >>> 63);
+                proteinLowComplexity += proteinLow * (i + 1 - Math.max(proteinCovered, i + 1 - WINDOW));
+                proteinCovered += proteinLow * (i + 1 - proteinCovered);
+                int nucleotideLow = (int) ((NUCLEOTIDE_SUM_LIMIT - windowSum) >>> 63);
+                nucleotideLowComplexity += nucleotideLow * (i + 1 - Math.max(nucleotideCovered, i + 1 - WINDOW));
+                nucleotideCovered += nucleotideLow * (i + 1 - nucleotideCovered);
+            }
+        }
+
+        SequenceStatistics statistics = new SequenceStatistics();
+        statistics.setMolecule(molecule);
+        statistics.setLength(length);
+        statistics.setResidueCounts(counts);
+
+        //Sequence is a nucleotide sequence if it contains only A, C, G, T, U, N and gaps
+        int a = counts[CODES['A']], c = counts[CODES['C']], g = counts[CODES['G']], t = counts[CODES['T']], u = counts[CODES['U']];
+        int bases = a + c + g + t + u;
+        boolean nucleotide = bases > 0 && bases + counts[CODES['N']] + counts[CODES['-']] == length;
+        statistics.setNucleotide(nucleotide);
+        if (nucleotide) {statistics.setGcContent((double) (g + c) / bases);}
+
+        double[] masses = nucleotide ? NUCLEOTIDE_MASSES : PROTEIN_MASSES;
+        double weight = 0;
+        for (int i = 0; i < counts.length; i++) {
+            weight += counts[i] * masses[i];
+        }
+        //Water of the ends of the chain, nucleotide strand does not have the phosphate at 5' end
+        statistics.setMolecularWeight(weight == 0 ? 0 : weight + (nucleotide ? -61.96 : WATER_MASS));
+        if (length > 0) {statistics.setLowComplexityFraction((double) (nucleotide ? nucleotideLowComplexity : proteinLowComplexity) / length);}
+        return statistics;
+    }
+
+    /**
+     * Writes statistics into the csv file. Every statistic is in its own column, counts of residues have columns only for
+     * residues present in some molecule.
+     * @param statistics Statistics of the molecules.
+     * @param fileName Path to the file.
+     * @throws IOException Writing into the file.
+     */
+    public static void writeCsv(List<SequenceStatistics> statistics, String fileName) throws IOException {
+        boolean[] present = new boolean[OTHER + 1];
+        for (SequenceStatistics molecule : statistics) {
+            for (int i = 0; i <= OTHER; i++) {
+                if (molecule.getResidueCounts()[i] > 0) {present[i] = true;}
+            }
+        }
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            //Header
+            StringBuilder line = new StringBuilder("Description,Length,Type,GCContent,MolecularWeight,LowComplexityFraction");
+            for (int i = 0; i <= OTHER; i++) {
+                if (present[i]) {line.append(",Count").append(i == OTHER ? "Other" : String.valueOf(ALPHABET.charAt(i)));}
+            }
+            writer.write(line.toString());
+            writer.newLine();
+
+            for (SequenceStatistics molecule : statistics) {
+                line.setLength(0);
+                //Description without '>', quoted because it can contain commas
+                line.append('"').append(molecule.getMolecule().getDescription().substring(1).replace("\"", "\"\"")).append('"');
+                line.append(',').append(molecule.getLength());
+                line.append(',').append(molecule.isNucleotide() ? "nucleotide" : "protein");
+                line.append(',').append(molecule.isNucleotide() ? String.format(Locale.ROOT, "%.4f", molecule.getGcContent()) : "");
+                line.append(',').append(String.format(Locale.ROOT, "%.2f", molecule.getMolecularWeight()));
+                line.append(',').append(String.format(Locale.ROOT, "%.4f", molecule.getLowComplexityFraction()));
+                for (int i = 0; i <= OTHER; i++) {
+                    if (present[i]) {line.append(',').append(molecule.getResidueCounts()[i]);}
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+    }
+}
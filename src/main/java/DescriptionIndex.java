@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over the descriptions of loaded molecules. Finds every molecule which description contains given identifier (same result
+ * as checking description.contains(identifier) for every molecule). Candidates are taken from the shortest lists of the token index
+ * (whole words like accession numbers) and the trigram index, then checked by contains.
+ */
+public class DescriptionIndex {
+
+    /**
+     * Indexed molecules. New molecules are only appended to the list.
+     */
+    private final List<FastaData> molecules;
+    private int indexedCount = 0;
+
+    /**
+     * Token (e.g. accession number) -> numbers of molecules with this token in the description.
+     */
+    private final Map<String, IntList> tokens = new HashMap<>();
+
+    /**
+     * Trigram packed into long -> position of the list with numbers of molecules in the trigramLists.
+     */
+    private final LongIntHashMap trigrams = new LongIntHashMap(1 << 12);
+    private final List<IntList> trigramLists = new ArrayList<>();
+
+    public DescriptionIndex(List<FastaData> molecules) { this.molecules = molecules; }
+
+    /**
+     * Adds molecules which were loaded after the last update into the index.
+     */
+    public void update() {
+        for (; indexedCount < molecules.size(); indexedCount++) {
+            String description = molecules.get(indexedCount).getDescription();
+
+            //Tokens
+            int tokenStart = -1;
+            for (int i = 0; i <= description.length(); i++) {
+                boolean tokenChar = i < description.length() && isTokenChar(description.charAt(i));
+                if (tokenChar && tokenStart == -1) {tokenStart = i;}
+                if (!tokenChar && tokenStart != -1) {
+                    addToList(tokens.computeIfAbsent(description.substring(tokenStart, i), k -> new IntList(1)), indexedCount);
+                    tokenStart = -1;
+                }
+            }
+
+            //Trigrams
+            for (int i = 0; i + 3 <= description.length(); i++) {
+                long key = trigram(description, i);
+                int listIndex = trigrams.get(key);
+                if (listIndex == -1) {
+                    listIndex = trigramLists.size();
+                    trigrams.put(key, listIndex);
+                    trigramLists.add(new IntList(1));
+                }
+                addToList(trigramLists.get(listIndex), indexedCount);
+            }
+        }
+    }
+
+    /**
+     * Finds molecules which description contains the identifier.
+     * @param identifier Substring of the description.
+     * @return Molecules in the order in which they were loaded.
+     */
+    public List<FastaData> find(String identifier) {
+        //Lists of candidates
+        List<IntList> candidateLists = new ArrayList<>();
+        for (String token : interiorTokens(identifier)) {
+            IntList list = tokens.get(token);
+            if (list == null) {return new ArrayList<>();}
+            candidateLists.add(list);
+        }
+        for (int i = 0; i + 3 <= identifier.length(); i++) {
+            int listIndex = trigrams.get(trigram(identifier, i));
+            if (listIndex == -1) {return new ArrayList<>();}
+            candidateLists.add(trigramLists.get(listIndex));
+        }
+
+        //Too short identifier, every description has to be checked
+        List<FastaData> found = new ArrayList<>();
+        if (candidateLists.isEmpty()) {
+            for (int i = 0; i < indexedCount; i++) {
+                if (molecules.get(i).getDescription().contains(identifier)) {found.add(molecules.get(i));}
+            }
+            return found;
+        }
+
+        //Intersection of the two shortest lists, remaining candidates are checked directly
+        candidateLists.sort((first, second) -> Integer.compare(first.size(), second.size()));
+        IntList shortest = candidateLists.get(0);
+        IntList second = candidateLists.size() > 1 ? candidateLists.get(1) : shortest;
+        int j = 0;
+        for (int i = 0; i < shortest.size(); i++) {
+            int candidate = shortest.get(i);
+            while (j < second.size() && second.get(j) < candidate) {j++;}
+            if (j == second.size()) {break;}
+            if (second.get(j) != candidate) {continue;}
+            if (molecules.get(candidate).getDescription().contains(identifier)) {found.add(molecules.get(candidate));}
+        }
+        return found;
+    }
+
+    /**
+     * Finds tokens inside the identifier which are delimited from both sides. Such tokens have to be whole tokens in the description.
+     * @param identifier Identifier in question.
+     * @return List of the tokens.
+     */
+    private static List<String> interiorTokens(String identifier) {
+        List<String> found = new ArrayList<>();
+        int tokenStart = -1;
+        for (int i = 0; i < identifier.length(); i++) {
+            boolean tokenChar = isTokenChar(identifier.charAt(i));
+            if (tokenChar && tokenStart == -1) {tokenStart = i;}
+            if (!tokenChar && tokenStart != -1) {
+                if (tokenStart > 0) {found.add(identifier.substring(tokenStart, i));}
+                tokenStart = -1;
+            }
+        }
+        return found;
+    }
+
+    private static boolean isTokenChar(char c) { return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-'; }
+
+    /**
+     * Packs three characters of the text into one number.
+     * @param text Text in question.
+     * @param position Position of the first character.
+     * @return Trigram packed into long.
+     */
+    private static long trigram(String text, int position) {
+        return ((long) text.charAt(position) << 32) | ((long) text.charAt(position + 1) << 16) | text.charAt(position + 2);
+    }
+
+    /**
+     * Adds number of the molecule into the list only once.
+     * @param list List of molecule numbers.
+     * @param moleculeNumber Number of the molecule.
+     */
+    private static void addToList(IntList list, int moleculeNumber) {
+        if (list.last() != moleculeNumber) {list.add(moleculeNumber);}
+    }
+}
@@ -1,15 +1,155 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
- * Class used to store small data about the molecules in the file. Sequence is not stored internally because of memory burden.
+ * Class used to store small data about the molecules in the file. Sequence is stored packed (see PackedSequence) because of memory burden.
  */
 public class FastaData {
     private String description = null;
     private int sequenceLength = -1;
-    private String sequence = null;
+    private PackedSequence sequence = null;
+
+    /**
+     * Position of the sequence in the file. In indexed mode sequences are read from the file on first access and kept in SequenceCache.
+     */
+    private String fileName = null;
+    private long sequenceOffset = -1;
+    private int lineBases = -1;
+    private int lineWidth = -1;
+
+    /**
+     * Hash of the content used by fingerprint. Computed on first use, setters of the hashed fields invalidate it.
+     */
+    private long contentHash = 0;
+    private boolean hashed = false;
 
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) {
+        this.description = description;
+        hashed = false;
+    }
     public String getDescription() {return description;}
-    public void setSequenceLength(int sequenceLength) { this.sequenceLength = sequenceLength; }
+    public void setSequenceLength(int sequenceLength) {
+        this.sequenceLength = sequenceLength;
+        hashed = false;
+    }
     public int getSequenceLength() {return sequenceLength;}
-    public void setSequence(String sequence) { this.sequence = sequence; }
-    public String getSequence() { return sequence; }
+    public void setSequence(String sequence) {
+        this.sequence = PackedSequence.encode(sequence);
+        hashed = false;
+    }
+    public void setPackedSequence(PackedSequence sequence) {
+        this.sequence = sequence;
+        hashed = false;
+    }
+    public PackedSequence getPackedSequence() { return sequence; }
+
+    /**
+     * Gets the whole sequence. In indexed mode the sequence is read from the file or from the cache.
+     * @return Sequence of the molecule.
+     */
+    public String getSequence() {
+        if (sequence == null && sequenceOffset >= 0) {return SequenceCache.get(this).toString();}
+        return sequence == null ? null : sequence.toString();
+    }
+
+    /**
+     * Gets part of the sequence. In indexed mode only this part is read from the file, if the sequence is not cached.
+     * @param from Start of the subsequence (0-based, inclusive).
+     * @param to End of the subsequence (0-based, exclusive).
+     * @return Subsequence of the molecule.
+     */
+    public String getSubsequence(int from, int to) {
+        if (sequence == null && sequenceOffset >= 0) {
+            //Whole sequence is not read because of one subsequence
+            PackedSequence cached = SequenceCache.peek(this);
+            return cached == null ? FastaIndex.readSubsequence(this, from, to) : cached.substring(from, to);
+        }
+        return sequence.substring(from, to);
+    }
+
+    /**
+     * Gets the whole sequence as one-letter codes in bytes. Used by algorithms working with whole sequences.
+     * @return Array with residues of the molecule.
+     */
+    public byte[] getResidues() {
+        if (sequence == null && sequenceOffset >= 0) {return SequenceCache.get(this).toBytes();}
+        if (sequence == null) {return getSequence().getBytes(StandardCharsets.ISO_8859_1);}
+        return sequence.toBytes();
+    }
+
+    /**
+     * Computes number identifying loaded molecules. Saved indexes can be used only for molecules with the same fingerprint.
+     * Content of every molecule is hashed only once (see contentHash), so checking an index before every query does not read
+     * the sequences again.
+     * @param molecules Loaded molecules.
+     * @return Fingerprint of the molecules.
+     */
+    public static long fingerprint(List<FastaData> molecules) {
+        long fingerprint = molecules.size();
+        Map<String, Long> fileStamps = new HashMap<>();
+        for (FastaData molecule : molecules) {
+            fingerprint = fingerprint * 31 + molecule.contentHash(fileStamps);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Gets the hash of the description, length and sequence. Packed sequences kept in memory are hashed whole, they cannot change
+     * because PackedSequence is immutable. In indexed mode size and time of last modification of the source file are used instead
+     * (as in FastaSnapshot), so the sequence does not have to be read from the file.
+     * @param fileStamps Hashes of the source files computed for previous molecules.
+     * @return Hash of the molecule.
+     */
+    private long contentHash(Map<String, Long> fileStamps) {
+        if (hashed) {return contentHash;}
+        long hash = description.hashCode();
+        hash = hash * 31 + sequenceLength;
+        if (sequence != null) {
+            for (long word : sequence.getWords()) {
+                hash = hash * 31 + word;
+            }
+        } else if (fileName != null) {
+            hash = hash * 31 + fileStamps.computeIfAbsent(fileName, FastaData::fileStamp);
+        }
+        contentHash = hash;
+        hashed = true;
+        return hash;
+    }
+
+    /**
+     * Hashes name, size and time of last modification of the source file.
+     * @param fileName Name of the file in the InputFiles directory.
+     * @return Hash of the file.
+     */
+    private static long fileStamp(String fileName) {
+        Path source = Paths.get("InputFiles", fileName);
+        long stamp = fileName.hashCode();
+        try {
+            stamp = stamp * 31 + Files.size(source);
+            stamp = stamp * 31 + Files.getLastModifiedTime(source).toMillis();
+        }
+        catch (IOException e) {
+            //Missing file cannot match a saved index
+            stamp = stamp * 31 - 1;
+        }
+        return stamp;
+    }
+
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+        hashed = false;
+    }
+    public String getFileName() { return fileName; }
+    public void setSequenceOffset(long sequenceOffset) { this.sequenceOffset = sequenceOffset; }
+    public long getSequenceOffset() { return sequenceOffset; }
+    public void setLineBases(int lineBases) { this.lineBases = lineBases; }
+    public int getLineBases() { return lineBases; }
+    public void setLineWidth(int lineWidth) { this.lineWidth = lineWidth; }
+    public int getLineWidth() { return lineWidth; }
 }
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Index of the fasta file in the style of samtools .fai files. For every molecule FastaStreamParser stores byte offset of its sequence,
+ * number of residues on one line and number of bytes on one line (line stride). Requested parts of the sequences are read
+ * from the memory-mapped file (or from the needed blocks of BGZF file), so used memory does not depend on the size of the file.
+ */
+public class FastaIndex {
+
+    /**
+     * Maximal size of one memory-mapped region of the file.
+     */
+    private static final long MAP_SIZE = 1 << 26;
+
+    /**
+     * Reads part of the sequence of indexed molecule from the file.
+     * @param molecule Indexed molecule.
+     * @param from Start of the subsequence (0-based, inclusive).
+     * @param to End of the subsequence (0-based, exclusive).
+     * @return Subsequence of the molecule. Empty string if the file could not be read.
+     */
+    public static String readSubsequence(FastaData molecule, int from, int to) {
+        if (from < 0 || to > molecule.getSequenceLength() || from > to) {
+            throw new StringIndexOutOfBoundsException("begin " + from + ", end " + to + ", length " + molecule.getSequenceLength());
+        }
+
+        byte[] residues = new byte[to - from];
+        //Regular lines - position of the first residue can be computed
+        long position = molecule.getSequenceOffset();
+        long skip = from;
+        if (molecule.getLineBases() > 0) {
+            position += (long) (from / molecule.getLineBases()) * molecule.getLineWidth() + from % molecule.getLineBases();
+            skip = 0;
+        }
+
+        try {
+            //Compressed file - only blocks containing the subsequence are decompressed
+            BgzfFile bgzf = BgzfFile.forFile(molecule.getFileName());
+            if (bgzf != null) {
+                try (InputStream input = bgzf.openStream(position)) {
+                    copyResidues(input, skip, residues);
+                }
+            } else {
+                try (FileChannel channel = FileChannel.open(Paths.get("InputFiles", molecule.getFileName()), StandardOpenOption.READ)) {
+                    copyResidues(channel, position, skip, residues);
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some error occurred while reading the sequence from the file.");
+            return "";
+        }
+        return new String(residues, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Copies residues from the memory-mapped file. Line terminators are skipped.
+     * @param channel Channel of the opened file.
+     * @param position Position in the file where the copying starts.
+     * @param skip Number of residues which are skipped before the copying.
+     * @param residues Array which is filled by the residues.
+     * @throws IOException Mapping of the file. Handled in calling method.
+     */
+    private static void copyResidues(FileChannel channel, long position, long skip, byte[] residues) throws IOException {
+        int copied = 0;
+        long size = channel.size();
+        while (copied < residues.length && position < size) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_SIZE, size - position));
+            while (region.hasRemaining() && copied < residues.length) {
+                byte residue = region.get();
+                if (residue == '\n' || residue == '\r') {continue;}
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                residues[copied++] = residue;
+            }
+            position += region.capacity();
+        }
+    }
+
+    /**
+     * Copies residues from the stream of decompressed data. Line terminators are skipped.
+     * @param input Stream starting at the position where the copying starts.
+     * @param skip Number of residues which are skipped before the copying.
+     * @param residues Array which is filled by the residues.
+     * @throws IOException Reading of the stream. Handled in calling method.
+     */
+    private static void copyResidues(InputStream input, long skip, byte[] residues) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        int copied = 0;
+        int read;
+        while (copied < residues.length && (read = input.read(buffer)) != -1) {
+            for (int i = 0; i < read && copied < residues.length; i++) {
+                if (buffer[i] == '\n' || buffer[i] == '\r') {continue;}
+                if (skip > 0) {
+                    skip--;
+                    continue;
+                }
+                residues[copied++] = buffer[i];
+            }
+        }
+    }
+}
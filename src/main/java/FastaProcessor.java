@@ -1,7 +1,9 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.SQLOutput;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -11,13 +13,33 @@ public class FastaProcessor {
      * Data structure used for storing the information about macro molecules in the fasta file.
      */
     private static List<FastaData> storedData = new ArrayList<>();
+    /**
+     * Index used for finding molecules by identifiers. Updated after loading of every file.
+     */
+    private static DescriptionIndex descriptionIndex = new DescriptionIndex(storedData);
     private static String sequenceIdentifier = "";
+    /**
+     * In indexed mode only positions of the sequences are loaded and sequences are read from the file when needed.
+     */
+    private static boolean indexedMode = false;
+    /**
+     * Index used for searching motifs. Built when the first motif is searched and saved into the OutputFiles directory.
+     */
+    private static KmerIndex kmerIndex = null;
+    private static final String KMER_INDEX_FILE = "OutputFiles/KmerIndex.bin";
+    /**
+     * FM-index used for counting peptides. Built when it is needed first time and used from the memory-mapped file.
+     */
+    private static FmIndex fmIndex = null;
+    private static final String FM_INDEX_FILE = "OutputFiles/FmIndex.bin";
 
     /**
      * Maim method of this class.
      * @param fileNames Contains name of the files used.
      */
     public static List<FastaData> run(String[] fileNames) {
+        indexedMode = userWantsIndexedMode();
+        if (indexedMode) {setCacheBudget();}
         dataPreprocessor(fileNames);
 
         //Work inside this task
@@ -28,77 +50,80 @@ public class FastaProcessor {
     }
 
     /**
-     * Cycle for processing each file. Handles the IOException.
-     * @param fileNames Array with names of the files.
+     * Checks if user wants to load the files in indexed mode.
+     * @return True if yes, False if not.
      */
-    public static List<FastaData> dataPreprocessor(String[] fileNames){
-        for (String fileName : fileNames) {
-            try (BufferedReader reader = new BufferedReader(new FileReader("InputFiles/" + fileName))) {
-                preprocessFile(reader);
+    private static boolean userWantsIndexedMode() {
+        while (true) {
+            System.out.println();
+            System.out.println("Do you want to load the files in indexed mode? Sequences stay in the files and only requested parts are read. [ Y / n ]");
+
+            String consoleInput = Controller.consoleInputReader.nextLine();
+            if (consoleInput.contentEquals("Y") || consoleInput.contentEquals("y")) {
+                return true;
             }
-            catch (IOException e) {
-                System.out.println();
-                System.out.println("Some error occured. Stopping this task.");
+            if (consoleInput.contentEquals("N") || consoleInput.contentEquals("n")) {
+                return false;
             }
+
+            System.out.println();
+            System.out.println("Invalid response.");
         }
-        return storedData;
     }
 
     /**
-     * Used to process one file into the storedData list.
-     * @param reader BufferedReader used to read the file.
-     * @throws IOException Handled in the calling function.
+     * Asks user how much memory can be used for sequences read from the files in indexed mode.
      */
-    private static void preprocessFile(BufferedReader reader) throws IOException {
-        String line;
-        int seqLength = 0;
-        String sequence = "";
-        FastaData lastMolecule = new FastaData();
-
-        while ((line = reader.readLine()) != null) {
-            //Empty line
-            if (line.length() == 0) {
-                lastMolecule.setSequenceLength(seqLength);
-                lastMolecule.setSequence(sequence);
-                if (seqLength > 0) {
-                    storedData.add(lastMolecule);
-                    seqLength = 0;
-                    sequence = "";
-                }
-                continue;
+    private static void setCacheBudget() {
+        System.out.println();
+        System.out.println("How many megabytes can be used for caching of sequences read from the files? Current value is " + (SequenceCache.getBudget() >> 20) + ".");
+        try {
+            long megabytes = Long.parseLong(Controller.consoleInputReader.nextLine());
+            if (megabytes >= 0) {
+                SequenceCache.setBudget(megabytes << 20);
+                return;
             }
-            //Description line
-            if (line.substring(0,1).contentEquals(">")) {
-                //If molecules are not delimited by an empty line
-                if (seqLength > 0 && lastMolecule.getDescription() != null) {
-                    lastMolecule.setSequenceLength(seqLength);
-                    lastMolecule.setSequence(sequence);
-                    storedData.add(lastMolecule);
-                }
+        }
+        catch (NumberFormatException e) {
+            //Handled below
+        }
+        System.out.println();
+        System.out.println("Invalid number, current value will be used.");
+    }
 
-                //Memory assignment and initialization of new molecule data
-                lastMolecule = new FastaData();
-                lastMolecule.setDescription(line);
-                seqLength = 0;
-                sequence = "";
+    /**
+     * Loads molecules from each file. Handles files which could not be read.
+     * @param fileNames Array with names of the files.
+     */
+    public static List<FastaData> dataPreprocessor(String[] fileNames){
+        //Files are parsed in parallel, molecules are added in the order of the files
+        for (List<FastaData> molecules : ParallelFastaLoader.loadFiles(fileNames, !indexedMode)) {
+            if (molecules == null) {
+                System.out.println();
+                System.out.println("Some error occured. Stopping this task.");
                 continue;
             }
-            //Sequence line
-            seqLength += line.length();
-            sequence = sequence + line;
+            storedData.addAll(molecules);
         }
+        //Identical sequences share one stored copy
+        SequenceDeduplicator.deduplicate(storedData);
+        descriptionIndex.update();
+        return storedData;
+    }
 
-        //last line of file
-        if (seqLength > 0 && lastMolecule.getDescription() != null) {
-            lastMolecule.setSequenceLength(seqLength);
-            lastMolecule.setSequence(sequence);
-            storedData.add(lastMolecule);
-        }
+    /**
+     * Finds loaded molecules with the identifier in the description.
+     * @param identifier Any substring of the description.
+     * @return Molecules in the order in which they were loaded.
+     */
+    public static List<FastaData> findMolecules(String identifier) {
+        descriptionIndex.update();
+        return descriptionIndex.find(identifier);
     }
 
     /**
      * Used to read and decide the function ID. Also stores identifier of the sequence in the static variable 'sequenceIdentifier'.
-     * @return ID of the function (values 0 - 4). Invalid inputs (bigger function ID or missing identifier) are handled in the 'runFunction' method.
+     * @return ID of the function (values 0 - 9). Invalid inputs (bigger function ID or missing identifier) are handled in the 'runFunction' method.
      */
     private static int decideFunction() {
         System.out.println();
@@ -109,6 +134,11 @@ public class FastaProcessor {
         System.out.println("2 - Get the sequence of the given molecule.");
         System.out.println("3 - Get the sequence length of the given molecule.");
         System.out.println("4 - Get the subsequence of the given molecule");
+        System.out.println("5 - Find all occurrences of the motif (write the motif instead of the identifier).");
+        System.out.println("6 - Count molecules containing the peptide (write the peptide instead of the identifier).");
+        System.out.println("7 - Get groups of molecules with identical sequences among molecules with the identifier ('>' for all molecules).");
+        System.out.println("8 - Save composition statistics of molecules with the identifier into a csv file ('>' for all molecules).");
+        System.out.println("9 - Find molecules most similar to the query sequence (write the query instead of the identifier).");
 
         //Reading and parsing user input
         String line = Controller.consoleInputReader.nextLine();
@@ -123,7 +153,7 @@ public class FastaProcessor {
         catch (StringIndexOutOfBoundsException e) {
             System.out.println();
             System.out.println("You did not write identifier of the sequence.");
-            return 5;
+            return -1;
         }
         //If structure of the command was correct
         return chosenFunction;
@@ -151,8 +181,23 @@ public class FastaProcessor {
             case 4:
                 printSubsequence();
                 break;
-            //Invalid function ID - only break should be here
             case 5:
+                printMotifOccurrences();
+                break;
+            case 6:
+                printPeptideCounts();
+                break;
+            case 7:
+                printIdenticalSequences();
+                break;
+            case 8:
+                saveStatistics();
+                break;
+            case 9:
+                printSimilarMolecules();
+                break;
+            //Invalid function ID - only break should be here
+            case -1:
                 break;
             default:
                 System.out.println();
@@ -168,10 +213,8 @@ public class FastaProcessor {
      */
     private static void printDescription() {
         System.out.println();
-        for (FastaData sequence : storedData) {
-            if (sequence.getDescription().contains(sequenceIdentifier)) {
-                System.out.println(sequence.getDescription().substring(1));
-            }
+        for (FastaData sequence : findMolecules(sequenceIdentifier)) {
+            System.out.println(sequence.getDescription().substring(1));
         }
     }
 
@@ -180,10 +223,8 @@ public class FastaProcessor {
      */
     private static void printSequence(){
         System.out.println();
-        for (FastaData sequence : storedData) {
-            if (sequence.getDescription().contains(sequenceIdentifier)) {
-                System.out.println(sequence.getSequence());
-            }
+        for (FastaData sequence : findMolecules(sequenceIdentifier)) {
+            System.out.println(sequence.getSequence());
         }
     }
 
@@ -192,10 +233,8 @@ public class FastaProcessor {
      */
     private static void printSequenceLength() {
         System.out.println();
-        for (FastaData sequence : storedData) {
-            if (sequence.getDescription().contains(sequenceIdentifier)) {
-                System.out.println("Sequence length: " + sequence.getSequenceLength());
-            }
+        for (FastaData sequence : findMolecules(sequenceIdentifier)) {
+            System.out.println("Sequence length: " + sequence.getSequenceLength());
         }
     }
 
@@ -218,14 +257,188 @@ public class FastaProcessor {
         }
 
         //Printing the subsequence
-        for (FastaData sequence : storedData) {
-            if (sequence.getDescription().contains(sequenceIdentifier)) {
-                if (rightBorder == -1 ) {
-                    System.out.println(sequence.getSequence().substring(leftBorder - 1));
-                } else {
-                    System.out.println(sequence.getSequence().substring(leftBorder - 1, rightBorder));
+        for (FastaData sequence : findMolecules(sequenceIdentifier)) {
+            if (rightBorder == -1 ) {
+                System.out.println(sequence.getSubsequence(leftBorder - 1, sequence.getSequenceLength()));
+            } else {
+                System.out.println(sequence.getSubsequence(leftBorder - 1, rightBorder));
+            }
+        }
+    }
+
+    /**
+     * Prints every molecule and position (1-based) where the motif specified in the static sequenceIdentifier variable occurs.
+     */
+    private static void printMotifOccurrences() {
+        prepareKmerIndex();
+        if (kmerIndex == null) {return;}
+
+        long[] occurrences = kmerIndex.find(storedData, sequenceIdentifier);
+        System.out.println();
+        System.out.println("Motif was found " + occurrences.length + " times.");
+        for (long occurrence : occurrences) {
+            FastaData molecule = storedData.get((int) (occurrence >>> 32));
+            System.out.println(molecule.getDescription().substring(1) + " - position " + ((int) occurrence + 1));
+        }
+    }
+
+    /**
+     * Prints the molecules most similar to the query specified in the static sequenceIdentifier variable, ranked by the score
+     * of their local alignment. Uses the same index of k-mers as the search of motifs.
+     */
+    private static void printSimilarMolecules() {
+        prepareKmerIndex();
+        if (kmerIndex == null) {return;}
+
+        System.out.println();
+        System.out.println("Which scoring matrix do you want to use? Please have file containing it (.txt format) in the InputFiles/ScoringMatrices folder. [ e.g. BLOSUM62prot]");
+        ScoringMatrix matrix;
+        try {
+            matrix = ScoringMatrix.load(Controller.consoleInputReader.nextLine().trim());
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some error occurred. Make sure that you have file with scoring matrix in the right directory.");
+            return;
+        }
+        System.out.println();
+        System.out.println("How many molecules should be printed?");
+        int maxHits;
+        try {
+            maxHits = Integer.parseInt(Controller.consoleInputReader.nextLine().trim());
+        }
+        catch (NumberFormatException e) {
+            maxHits = -1;
+        }
+        if (maxHits < 1) {
+            System.out.println();
+            System.out.println("Invalid number of molecules.");
+            return;
+        }
+
+        List<SearchHit> hits = SimilaritySearch.search(storedData, kmerIndex, sequenceIdentifier.toUpperCase(), matrix, maxHits);
+        System.out.println();
+        System.out.println(hits.size() + " similar molecules were found (gap penalties " + SimilaritySearch.GAP_OPEN + " and " + SimilaritySearch.GAP_EXTENSION + ").");
+        for (int i = 0; i < hits.size(); i++) {
+            SearchHit hit = hits.get(i);
+            System.out.println((i + 1) + ". " + storedData.get(hit.getMolecule()).getDescription().substring(1));
+            System.out.println("   score " + hit.getScore() + ", seeds " + hit.getSeeds() + ", query " + (hit.getQueryStart() + 1) + " - " + (hit.getQueryEnd() + 1)
+                    + ", molecule " + (hit.getTargetStart() + 1) + " - " + (hit.getTargetEnd() + 1));
+        }
+    }
+
+    /**
+     * Loads saved index of k-mers if it belongs to the loaded molecules. Otherwise builds the index and saves it.
+     */
+    private static void prepareKmerIndex() {
+        if (kmerIndex != null && kmerIndex.isIndexOf(storedData)) {return;}
+
+        //Saved index
+        try {
+            if (Files.exists(Paths.get(KMER_INDEX_FILE))) {
+                KmerIndex savedIndex = KmerIndex.load(KMER_INDEX_FILE);
+                if (savedIndex != null && savedIndex.isIndexOf(storedData)) {
+                    kmerIndex = savedIndex;
+                    return;
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Saved index of k-mers could not be read, new index will be built.");
+        }
+
+        //New index
+        System.out.println();
+        System.out.println("Index of k-mers has to be built. Which length of k-mers should be used (1 - " + KmerIndex.MAX_K + ")?");
+        System.out.println("Motifs shorter than this length will be searched without the index.");
+        int k;
+        try {
+            k = Integer.parseInt(Controller.consoleInputReader.nextLine());
+        }
+        catch (NumberFormatException e) {
+            k = -1;
+        }
+        if (k < 1 || k > KmerIndex.MAX_K) {
+            System.out.println();
+            System.out.println("Invalid length of k-mers.");
+            return;
+        }
+
+        kmerIndex = KmerIndex.build(storedData, k);
+        try {
+            kmerIndex.save(KMER_INDEX_FILE);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Index of k-mers could not be saved.");
+        }
+    }
+
+    /**
+     * Prints number of occurrences of the peptide specified in the static sequenceIdentifier variable and number of molecules containing it.
+     */
+    private static void printPeptideCounts() {
+        //Saved index
+        if (fmIndex == null || !fmIndex.isIndexOf(storedData)) {
+            fmIndex = null;
+            try {
+                if (Files.exists(Paths.get(FM_INDEX_FILE))) {fmIndex = FmIndex.load(FM_INDEX_FILE, storedData);}
+                //New index
+                if (fmIndex == null) {
+                    System.out.println();
+                    System.out.println("Building the FM-index of loaded molecules.");
+                    FmIndex.build(storedData, FM_INDEX_FILE);
+                    fmIndex = FmIndex.load(FM_INDEX_FILE, storedData);
                 }
             }
+            catch (IOException e) {
+                System.out.println();
+                System.out.println("FM-index could not be built.");
+                fmIndex = null;
+                return;
+            }
+        }
+
+        System.out.println();
+        System.out.println("Peptide occurs " + fmIndex.count(sequenceIdentifier) + " times in " + fmIndex.countMolecules(sequenceIdentifier) + " molecules.");
+    }
+
+    /**
+     * Prints groups of molecules with identical sequences. Only molecules with description containing substring specified
+     * in the static sequenceIdentifier variable are compared.
+     */
+    private static void printIdenticalSequences() {
+        List<List<FastaData>> groups = SequenceDeduplicator.duplicateGroups(findMolecules(sequenceIdentifier));
+        System.out.println();
+        System.out.println("Found " + groups.size() + " groups of molecules with identical sequences.");
+        for (List<FastaData> group : groups) {
+            System.out.println();
+            System.out.println("Sequence length: " + group.get(0).getSequenceLength());
+            for (FastaData molecule : group) {
+                System.out.println(molecule.getDescription().substring(1));
+            }
+        }
+    }
+
+    /**
+     * Computes composition statistics of molecules with description containing substring specified in the static sequenceIdentifier
+     * variable and writes them into the csv file in the OutputFiles directory.
+     */
+    private static void saveStatistics() {
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String fileName = "OutputFiles/FastaStatistics" + dtf.format(LocalDateTime.now()) + ".csv";
+
+        List<SequenceStatistics> statistics = CompositionStatistics.compute(findMolecules(sequenceIdentifier));
+        try {
+            CompositionStatistics.writeCsv(statistics, fileName);
+            System.out.println();
+            System.out.println("Statistics of " + statistics.size() + " molecules were saved into file " + fileName);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some error occurred.");
         }
     }
 }
@@ -0,0 +1,169 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary snapshot of the parsed fasta file, saved into the OutputFiles directory. Contains descriptions, lengths and packed
+ * sequences of all molecules. Snapshot is valid only while size and time of last modification of the source file are the same.
+ * Loading memory-maps the snapshot and copies packed sequences without any parsing.
+ */
+public class FastaSnapshot {
+
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    /**
+     * Maximal size of one memory-mapped part of the sequences.
+     */
+    private static final long MAP_SIZE = 1L << 30;
+
+    private static Path snapshotPath(String fileName) { return Paths.get("OutputFiles", fileName + ".snapshot"); }
+
+    /**
+     * Checks whether the snapshot of the file exists and belongs to the current version of the file.
+     * @param fileName Name of the source file in the InputFiles directory.
+     * @return True if snapshot can be loaded.
+     */
+    public static boolean isCurrent(String fileName) {
+        Path snapshot = snapshotPath(fileName);
+        if (!Files.exists(snapshot)) {return false;}
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {return false;}
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            Path source = Paths.get("InputFiles", fileName);
+            return header.getInt(0) == FILE_VERSION && header.getLong(4) == Files.size(source)
+                    && header.getLong(12) == Files.getLastModifiedTime(source).toMillis();
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Saves the snapshot of the parsed file. Snapshot is written into a temporary file and then moved to its place, so an interrupted
+     * saving never leaves a snapshot with a valid header and missing data.
+     * @param fileName Name of the source file in the InputFiles directory.
+     * @param molecules Molecules parsed from the file, with stored sequences.
+     * @throws IOException Writing of the snapshot.
+     */
+    public static void save(String fileName, List<FastaData> molecules) throws IOException {
+        Path source = Paths.get("InputFiles", fileName);
+        List<byte[]> descriptions = new ArrayList<>();
+        long metadataSize = 0;
+        for (FastaData molecule : molecules) {
+            byte[] description = molecule.getDescription().getBytes(StandardCharsets.UTF_8);
+            descriptions.add(description);
+            metadataSize += 4 + description.length + 4 + 1 + 8 + 4 + 4 + 4;
+        }
+
+        Path temporaryFile = Paths.get(snapshotPath(fileName) + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+            //Header
+            output.writeInt(FILE_VERSION);
+            output.writeLong(Files.size(source));
+            output.writeLong(Files.getLastModifiedTime(source).toMillis());
+            output.writeInt(molecules.size());
+            output.writeLong(metadataSize);
+            output.writeInt(0);
+
+            //Data about molecules
+            for (int i = 0; i < molecules.size(); i++) {
+                FastaData molecule = molecules.get(i);
+                PackedSequence sequence = molecule.getPackedSequence();
+                output.writeInt(descriptions.get(i).length);
+                output.write(descriptions.get(i));
+                output.writeInt(molecule.getSequenceLength());
+                output.writeByte(sequence.getBitsPerResidue());
+                output.writeLong(molecule.getSequenceOffset());
+                output.writeInt(molecule.getLineBases());
+                output.writeInt(molecule.getLineWidth());
+                output.writeInt(sequence.getWords().length);
+            }
+
+            //Packed sequences, aligned to 8 bytes
+            for (long i = HEADER_SIZE + metadataSize; i % 8 != 0; i++) {
+                output.writeByte(0);
+            }
+            for (FastaData molecule : molecules) {
+                for (long word : molecule.getPackedSequence().getWords()) {
+                    output.writeLong(word);
+                }
+            }
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        Files.move(temporaryFile, snapshotPath(fileName), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Deletes the snapshot of the file, e.g. when it could not be loaded.
+     * @param fileName Name of the source file in the InputFiles directory.
+     */
+    public static void delete(String fileName) {
+        try {
+            Files.deleteIfExists(snapshotPath(fileName));
+        }
+        catch (IOException e) {
+            //Snapshot which cannot be deleted is replaced when the file is saved again
+        }
+    }
+
+    /**
+     * Loads molecules from the snapshot.
+     * @param fileName Name of the source file in the InputFiles directory.
+     * @return Molecules of the file with stored sequences.
+     * @throws IOException Reading of the snapshot.
+     */
+    public static List<FastaData> load(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int count = header.getInt(20);
+            long metadataSize = header.getLong(24);
+            if (metadataSize > Integer.MAX_VALUE) {throw new IOException("Too many molecules in the snapshot.");}
+            ByteBuffer metadata = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, metadataSize);
+
+            long wordsStart = (HEADER_SIZE + metadataSize + 7) / 8 * 8;
+            ByteBuffer words = null;
+            long wordsMapped = 0;
+            long position = wordsStart;
+            List<FastaData> molecules = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] description = new byte[metadata.getInt()];
+                metadata.get(description);
+                FastaData molecule = new FastaData();
+                molecule.setDescription(new String(description, StandardCharsets.UTF_8));
+                molecule.setFileName(fileName);
+                int length = metadata.getInt();
+                int bits = metadata.get();
+                molecule.setSequenceLength(length);
+                molecule.setSequenceOffset(metadata.getLong());
+                molecule.setLineBases(metadata.getInt());
+                molecule.setLineWidth(metadata.getInt());
+                long[] packed = new long[metadata.getInt()];
+
+                //Next part of the sequences is mapped when needed
+                if (words == null || position + 8L * packed.length > wordsMapped + words.capacity()) {
+                    wordsMapped = position;
+                    words = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.max(Math.min(MAP_SIZE, channel.size() - position), 8L * packed.length));
+                }
+                words.position((int) (position - wordsMapped));
+                words.asLongBuffer().get(packed);
+                position += 8L * packed.length;
+                molecule.setPackedSequence(PackedSequence.fromWords(packed, length, bits));
+                molecules.add(molecule);
+            }
+            return molecules;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads fasta files in big blocks of bytes. Time of the parsing is linear in the size of the file and sequences are stored packed.
+ */
+public class FastaStreamParser {
+
+    /**
+     * Size of the buffer used for reading the file.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Parses one file from the InputFiles directory.
+     * @param fileName Name of the file.
+     * @param storeSequences True if sequences should be stored, false if only their positions in the file (indexed mode).
+     * @return Molecules from the file.
+     * @throws IOException Handled in the calling function.
+     */
+    public static List<FastaData> parseFile(String fileName, boolean storeSequences) throws IOException {
+        try (InputStream input = Files.newInputStream(Paths.get("InputFiles", fileName))) {
+            return parse(input, 0, fileName, storeSequences);
+        }
+    }
+
+    /**
+     * Parses molecules from the stream. Every molecule gets position of its sequence in the file, line length and line stride.
+     * @param input Stream with the content of the file.
+     * @param startOffset Position of the first byte of the stream in the file.
+     * @param fileName Name of the file, stored in the molecules.
+     * @param storeSequences True if sequences should be stored, false if only their positions in the file (indexed mode).
+     * @return Molecules from the stream.
+     * @throws IOException Handled in the calling function.
+     */
+    public static List<FastaData> parse(InputStream input, long startOffset, String fileName, boolean storeSequences) throws IOException {
+        List<FastaData> molecules = new ArrayList<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int filled = 0;
+        int start = 0;
+        long bufferOffset = startOffset;
+        boolean endOfFile = false;
+
+        FastaData lastMolecule = null;
+        int seqLength = 0;
+        boolean previousLineFull = true;
+        //Residues of the last molecule, reused for every molecule
+        byte[] residues = new byte[storeSequences ? BUFFER_SIZE : 0];
+        int alphabetFlags = 0;
+
+        while (true) {
+            //Finding the end of the line, buffer is refilled if the line is not complete
+            int lineEnd = start;
+            while (lineEnd < filled && buffer[lineEnd] != '\n') {lineEnd++;}
+            int terminator = 1;
+            if (lineEnd == filled) {
+                if (!endOfFile) {
+                    System.arraycopy(buffer, start, buffer, 0, filled - start);
+                    bufferOffset += start;
+                    filled -= start;
+                    start = 0;
+                    if (filled == buffer.length) {buffer = Arrays.copyOf(buffer, buffer.length * 2);}
+                    int read = input.read(buffer, filled, buffer.length - filled);
+                    if (read == -1) {endOfFile = true;}
+                    else {filled += read;}
+                    continue;
+                }
+                if (start == filled) {break;}
+                terminator = 0;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > start && buffer[contentEnd - 1] == '\r') {
+                contentEnd--;
+                terminator++;
+            }
+            int lineLength = contentEnd - start;
+
+            //Empty line
+            if (lineLength == 0) {
+                addMolecule(molecules, lastMolecule, seqLength, residues, alphabetFlags, storeSequences);
+                lastMolecule = null;
+            }
+            //Description line
+            else if (buffer[start] == '>') {
+                addMolecule(molecules, lastMolecule, seqLength, residues, alphabetFlags, storeSequences);
+                lastMolecule = new FastaData();
+                lastMolecule.setDescription(new String(buffer, start, lineLength, StandardCharsets.UTF_8));
+                lastMolecule.setFileName(fileName);
+                seqLength = 0;
+                alphabetFlags = 0;
+            }
+            //Sequence line
+            else if (lastMolecule != null) {
+                if (seqLength == 0) {
+                    lastMolecule.setSequenceOffset(bufferOffset + start);
+                    lastMolecule.setLineBases(lineLength);
+                    lastMolecule.setLineWidth(lineLength + terminator);
+                } else if (!previousLineFull || lineLength > lastMolecule.getLineBases()) {
+                    //Lines of different length, positions have to be found by reading the sequence
+                    lastMolecule.setLineBases(-1);
+                    lastMolecule.setLineWidth(-1);
+                }
+                previousLineFull = lineLength == lastMolecule.getLineBases() && lineLength + terminator == lastMolecule.getLineWidth();
+
+                if (storeSequences) {
+                    if (seqLength + lineLength > residues.length) {
+                        residues = Arrays.copyOf(residues, Math.max(residues.length * 2, seqLength + lineLength));
+                    }
+                    System.arraycopy(buffer, start, residues, seqLength, lineLength);
+                    for (int i = start; i < contentEnd; i++) {
+                        alphabetFlags |= PackedSequence.alphabetFlag(buffer[i]);
+                    }
+                }
+                seqLength += lineLength;
+            }
+
+            start = lineEnd + 1;
+            if (terminator == 0) {break;}
+        }
+
+        //Last molecule of the file
+        addMolecule(molecules, lastMolecule, seqLength, residues, alphabetFlags, storeSequences);
+        return molecules;
+    }
+
+    /**
+     * Adds molecule into the list, but only if it has some sequence.
+     * @param molecules List of parsed molecules.
+     * @param molecule Molecule which sequence was completely read.
+     * @param seqLength Length of the sequence.
+     * @param residues Residues of the molecule.
+     * @param alphabetFlags Alphabet flags of the residues.
+     * @param storeSequences True if sequence should be packed and stored.
+     */
+    private static void addMolecule(List<FastaData> molecules, FastaData molecule, int seqLength, byte[] residues, int alphabetFlags, boolean storeSequences) {
+        if (molecule != null && seqLength > 0) {
+            molecule.setSequenceLength(seqLength);
+            if (storeSequences) {
+                molecule.setPackedSequence(PackedSequence.encode(residues, seqLength, alphabetFlags));
+            }
+            molecules.add(molecule);
+        }
+    }
+}
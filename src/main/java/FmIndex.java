@@ -0,0 +1,402 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * FM-index over the concatenated sequences of loaded molecules. Suffix array is built by SA-IS algorithm, index then consists of
+ * Burrows-Wheeler transform with occurrence checkpoints and suffix array sampled at every SAMPLE-th position of the text.
+ * Index is written into a file and used from the memory-mapped file, so counting of pattern occurrences takes time
+ * proportional to the length of the pattern, not to the size of the database.
+ */
+public class FmIndex {
+
+    private static final int FILE_VERSION = 1;
+    /**
+     * Symbols of the text: 0 - end of the text, 1 - end of the molecule, 2 + code of the residue (see PackedSequence.residueCode).
+     */
+    private static final int SIGMA = 30;
+    /**
+     * Distance of checkpoints with occurrence counts in the BWT.
+     */
+    private static final int OCC_STEP = 128;
+    /**
+     * Every SAMPLE-th position of the text is stored in the sampled suffix array.
+     */
+    private static final int SAMPLE = 32;
+
+    private final long fingerprint;
+    private final int length;
+    private final int[] counts = new int[SIGMA + 1];
+    private final int[] moleculeStarts;
+    private final ByteBuffer bwt;
+    private final IntBuffer occurrences;
+    private final LongBuffer sampledRows;
+    private final IntBuffer sampledRowRanks;
+    private final IntBuffer samples;
+
+    private FmIndex(long fingerprint, int length, int[] moleculeStarts, ByteBuffer bwt, IntBuffer occurrences,
+                    LongBuffer sampledRows, IntBuffer sampledRowRanks, IntBuffer samples) {
+        this.fingerprint = fingerprint;
+        this.length = length;
+        this.moleculeStarts = moleculeStarts;
+        this.bwt = bwt;
+        this.occurrences = occurrences;
+        this.sampledRows = sampledRows;
+        this.sampledRowRanks = sampledRowRanks;
+        this.samples = samples;
+    }
+
+    public boolean isIndexOf(List<FastaData> molecules) { return fingerprint == FastaData.fingerprint(molecules); }
+
+    /**
+     * Builds the index of the molecules and writes it into the file. Index is written into a temporary file first and then moved
+     * over the old file, so the old file is never opened for writing.
+     * @param molecules Indexed molecules.
+     * @param fileName Path to the file with the index.
+     * @throws IOException Writing into the file.
+     */
+    public static void build(List<FastaData> molecules, String fileName) throws IOException {
+        //Concatenated text
+        long textLength = 0;
+        for (FastaData molecule : molecules) {
+            textLength += molecule.getSequenceLength() + 1;
+        }
+        if (textLength == 0 || textLength >= Integer.MAX_VALUE) {throw new IOException("Unsupported size of the database for FM-index.");}
+        int[] text = new int[(int) textLength];
+        int[] moleculeStarts = new int[molecules.size()];
+        int position = 0;
+        for (int m = 0; m < molecules.size(); m++) {
+            moleculeStarts[m] = position;
+            for (byte residue : molecules.get(m).getResidues()) {
+                text[position++] = symbol(residue);
+            }
+            text[position++] = 1;
+        }
+        text[text.length - 1] = 0;
+
+        int[] suffixArray = new int[text.length];
+        suffixArraySais(text, suffixArray, text.length, SIGMA);
+
+        Path temporaryFile = Paths.get(fileName + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 1 << 16))) {
+            output.writeInt(FILE_VERSION);
+            output.writeLong(FastaData.fingerprint(molecules));
+            output.writeInt(text.length);
+            output.writeInt(moleculeStarts.length);
+            for (int start : moleculeStarts) {
+                output.writeInt(start);
+            }
+
+            //BWT
+            for (int row = 0; row < text.length; row++) {
+                output.writeByte(suffixArray[row] == 0 ? 0 : text[suffixArray[row] - 1]);
+            }
+            //Occurrence checkpoints, counts before every OCC_STEP-th row and after the last row
+            int[] running = new int[SIGMA];
+            for (int row = 0; row <= text.length; row++) {
+                if (row % OCC_STEP == 0 || row == text.length) {
+                    for (int c = 0; c < SIGMA; c++) {
+                        output.writeInt(running[c]);
+                    }
+                }
+                if (row < text.length) {running[suffixArray[row] == 0 ? 0 : text[suffixArray[row] - 1]]++;}
+            }
+            //Rows with sampled positions as a bit vector and number of sampled rows before every word of the vector
+            int words = (text.length + 63) / 64;
+            int sampledBefore = 0;
+            for (int w = 0; w < words; w++) {
+                output.writeInt(sampledBefore);
+                sampledBefore += Long.bitCount(sampledWord(suffixArray, w));
+            }
+            for (int w = 0; w < words; w++) {
+                output.writeLong(sampledWord(suffixArray, w));
+            }
+            //Sampled positions
+            output.writeInt(sampledBefore);
+            for (int row = 0; row < text.length; row++) {
+                if (suffixArray[row] % SAMPLE == 0) {output.writeInt(suffixArray[row]);}
+            }
+        }
+        Files.move(temporaryFile, Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long sampledWord(int[] suffixArray, int word) {
+        long bits = 0;
+        for (int i = 0; i < 64 && word * 64 + i < suffixArray.length; i++) {
+            if (suffixArray[word * 64 + i] % SAMPLE == 0) {bits |= 1L << i;}
+        }
+        return bits;
+    }
+
+    private static int symbol(byte residue) {
+        int code = PackedSequence.residueCode(residue);
+        //Residues outside of the one-letter code can not be part of any pattern
+        return code == -1 ? 1 : code + 2;
+    }
+
+    /**
+     * Loads the index from the file. Parts of the index stay in the memory-mapped file. Header is read without mapping, so a stale
+     * file is not mapped and can be replaced by a new index.
+     * @param fileName Path to the file with the index.
+     * @param molecules Loaded molecules, the file must contain their index.
+     * @return Loaded index or null if the file does not contain index of the current version or of these molecules.
+     * @throws IOException Reading of the file.
+     */
+    public static FmIndex load(String fileName, List<FastaData> molecules) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(20);
+            while (header.hasRemaining() && channel.read(header) != -1) {}
+            if (header.hasRemaining() || header.getInt(0) != FILE_VERSION) {return null;}
+            long fingerprint = header.getLong(4);
+            if (fingerprint != FastaData.fingerprint(molecules)) {return null;}
+            int length = header.getInt(12);
+            int moleculeCount = header.getInt(16);
+
+            long offset = 20;
+            int[] moleculeStarts = new int[moleculeCount];
+            channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * moleculeCount).asIntBuffer().get(moleculeStarts);
+            offset += 4L * moleculeCount;
+
+            ByteBuffer bwt = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            offset += length;
+            long occurrenceInts = ((long) (length - 1) / OCC_STEP + 2) * SIGMA;
+            IntBuffer occurrences = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4 * occurrenceInts).asIntBuffer();
+            offset += 4 * occurrenceInts;
+            int words = (length + 63) / 64;
+            IntBuffer sampledRowRanks = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * words).asIntBuffer();
+            offset += 4L * words;
+            LongBuffer sampledRows = channel.map(FileChannel.MapMode.READ_ONLY, offset, 8L * words).asLongBuffer();
+            offset += 8L * words;
+            int sampleCount = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4).getInt(0);
+            offset += 4;
+            IntBuffer samples = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L * sampleCount).asIntBuffer();
+
+            FmIndex index = new FmIndex(fingerprint, length, moleculeStarts, bwt, occurrences, sampledRows, sampledRowRanks, samples);
+            //Number of symbols smaller than c, taken from the last checkpoint
+            int last = (int) (occurrenceInts - SIGMA);
+            for (int c = 0; c < SIGMA; c++) {
+                index.counts[c + 1] = index.counts[c] + occurrences.get(last + c);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Counts occurrences of the symbol in the BWT before the row.
+     * @param symbol Symbol in question.
+     * @param row Row of the BWT (0 - length).
+     * @return Number of occurrences.
+     */
+    private int occurrences(int symbol, int row) {
+        int checkpoint = row / OCC_STEP;
+        int count = occurrences.get(checkpoint * SIGMA + symbol);
+        for (int i = checkpoint * OCC_STEP; i < row; i++) {
+            if (bwt.get(i) == symbol) {count++;}
+        }
+        return count;
+    }
+
+    /**
+     * Finds rows of the suffix array starting with the pattern by backward search.
+     * @param pattern Pattern in question.
+     * @return Interval of rows [first, second) or null if pattern does not occur.
+     */
+    private int[] rowInterval(String pattern) {
+        byte[] residues = pattern.getBytes(StandardCharsets.ISO_8859_1);
+        int first = 0;
+        int last = length;
+        for (int i = residues.length - 1; i >= 0 && first < last; i--) {
+            int code = PackedSequence.residueCode(residues[i]);
+            if (code == -1) {return null;}
+            int symbol = code + 2;
+            first = counts[symbol] + occurrences(symbol, first);
+            last = counts[symbol] + occurrences(symbol, last);
+        }
+        return first < last ? new int[] {first, last} : null;
+    }
+
+    /**
+     * Counts all occurrences of the pattern in the sequences.
+     * @param pattern Pattern in one-letter code.
+     * @return Number of occurrences.
+     */
+    public int count(String pattern) {
+        int[] rows = rowInterval(pattern);
+        return rows == null ? 0 : rows[1] - rows[0];
+    }
+
+    /**
+     * Finds all occurrences of the pattern.
+     * @param pattern Pattern in one-letter code.
+     * @return Occurrences as (number of the molecule shifted by 32 bits | position in the sequence, 0-based), sorted.
+     */
+    public long[] locate(String pattern) {
+        int[] rows = rowInterval(pattern);
+        if (rows == null) {return new long[0];}
+        long[] found = new long[rows[1] - rows[0]];
+        for (int row = rows[0]; row < rows[1]; row++) {
+            int position = textPosition(row);
+            int molecule = Arrays.binarySearch(moleculeStarts, position);
+            if (molecule < 0) {molecule = -molecule - 2;}
+            found[row - rows[0]] = ((long) molecule << 32) | (position - moleculeStarts[molecule]);
+        }
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Counts molecules containing the pattern at least once. Molecules are marked in a bit set, so occurrences are not stored and
+     * sorted, but the text position of every occurrence is still needed (at most SAMPLE steps of LF mapping each). Counting
+     * without positions would need a document array or a similar structure, which is not stored in the index.
+     * @param pattern Pattern in one-letter code.
+     * @return Number of molecules.
+     */
+    public int countMolecules(String pattern) {
+        int[] rows = rowInterval(pattern);
+        if (rows == null) {return 0;}
+        BitSet molecules = new BitSet(moleculeStarts.length);
+        for (int row = rows[0]; row < rows[1]; row++) {
+            int molecule = Arrays.binarySearch(moleculeStarts, textPosition(row));
+            molecules.set(molecule < 0 ? -molecule - 2 : molecule);
+        }
+        return molecules.cardinality();
+    }
+
+    /**
+     * Gets the position in the text for the row of the suffix array. Uses LF mapping until sampled row is reached.
+     * @param row Row of the suffix array.
+     * @return Position in the concatenated text.
+     */
+    private int textPosition(int row) {
+        int steps = 0;
+        while ((sampledRows.get(row / 64) & (1L << (row % 64))) == 0) {
+            int symbol = bwt.get(row);
+            row = counts[symbol] + occurrences(symbol, row);
+            steps++;
+        }
+        int rank = sampledRowRanks.get(row / 64) + Long.bitCount(sampledRows.get(row / 64) & ((1L << (row % 64)) - 1));
+        return samples.get(rank) + steps;
+    }
+
+    /**
+     * SA-IS algorithm (Nong, Zhang and Chan) for building the suffix array in linear time.
+     * @param text Text ending with unique smallest symbol 0.
+     * @param suffixArray Array for the result.
+     * @param n Length of the text.
+     * @param alphabetSize Number of different symbols.
+     */
+    private static void suffixArraySais(int[] text, int[] suffixArray, int n, int alphabetSize) {
+        //Types of the suffixes, true for S-type
+        boolean[] sType = new boolean[n];
+        sType[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--) {
+            sType[i] = text[i] < text[i + 1] || (text[i] == text[i + 1] && sType[i + 1]);
+        }
+        int[] buckets = new int[alphabetSize];
+
+        //Sorting of LMS substrings
+        bucketBorders(text, buckets, n, alphabetSize, true);
+        Arrays.fill(suffixArray, 0, n, -1);
+        for (int i = 1; i < n; i++) {
+            if (isLms(sType, i)) {suffixArray[--buckets[text[i]]] = i;}
+        }
+        induce(text, suffixArray, sType, buckets, n, alphabetSize);
+
+        //Naming of sorted LMS substrings
+        int lmsCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (isLms(sType, suffixArray[i])) {suffixArray[lmsCount++] = suffixArray[i];}
+        }
+        Arrays.fill(suffixArray, lmsCount, n, -1);
+        int name = 0;
+        int previous = -1;
+        for (int i = 0; i < lmsCount; i++) {
+            int position = suffixArray[i];
+            boolean different = false;
+            for (int d = 0; d < n; d++) {
+                if (previous == -1 || text[position + d] != text[previous + d] || sType[position + d] != sType[previous + d]) {
+                    different = true;
+                    break;
+                }
+                if (d > 0 && (isLms(sType, position + d) || isLms(sType, previous + d))) {break;}
+            }
+            if (different) {
+                name++;
+                previous = position;
+            }
+            suffixArray[lmsCount + position / 2] = name - 1;
+        }
+        int[] reducedText = new int[lmsCount];
+        for (int i = n - 1, j = lmsCount - 1; i >= lmsCount; i--) {
+            if (suffixArray[i] >= 0) {reducedText[j--] = suffixArray[i];}
+        }
+
+        //Sorting of LMS suffixes (recursively if names are not unique)
+        int[] reducedArray = new int[lmsCount];
+        if (name < lmsCount) {
+            suffixArraySais(reducedText, reducedArray, lmsCount, name);
+        } else {
+            for (int i = 0; i < lmsCount; i++) {
+                reducedArray[reducedText[i]] = i;
+            }
+        }
+
+        //Inducing the whole suffix array from sorted LMS suffixes
+        for (int i = 1, j = 0; i < n; i++) {
+            if (isLms(sType, i)) {reducedText[j++] = i;}
+        }
+        bucketBorders(text, buckets, n, alphabetSize, true);
+        Arrays.fill(suffixArray, 0, n, -1);
+        for (int i = lmsCount - 1; i >= 0; i--) {
+            int position = reducedText[reducedArray[i]];
+            suffixArray[--buckets[text[position]]] = position;
+        }
+        induce(text, suffixArray, sType, buckets, n, alphabetSize);
+    }
+
+    /**
+     * Induces L-type suffixes from left to right and S-type suffixes from right to left.
+     */
+    private static void induce(int[] text, int[] suffixArray, boolean[] sType, int[] buckets, int n, int alphabetSize) {
+        bucketBorders(text, buckets, n, alphabetSize, false);
+        for (int i = 0; i < n; i++) {
+            int j = suffixArray[i] - 1;
+            if (j >= 0 && !sType[j]) {suffixArray[buckets[text[j]]++] = j;}
+        }
+        bucketBorders(text, buckets, n, alphabetSize, true);
+        for (int i = n - 1; i >= 0; i--) {
+            int j = suffixArray[i] - 1;
+            if (j >= 0 && sType[j]) {suffixArray[--buckets[text[j]]] = j;}
+        }
+    }
+
+    /**
+     * Computes starts or ends of the buckets of the symbols.
+     */
+    private static void bucketBorders(int[] text, int[] buckets, int n, int alphabetSize, boolean ends) {
+        Arrays.fill(buckets, 0, alphabetSize, 0);
+        for (int i = 0; i < n; i++) {
+            buckets[text[i]]++;
+        }
+        int sum = 0;
+        for (int c = 0; c < alphabetSize; c++) {
+            sum += buckets[c];
+            buckets[c] = ends ? sum : sum - buckets[c];
+        }
+    }
+
+    private static boolean isLms(boolean[] sType, int i) { return i > 0 && sType[i] && !sType[i - 1]; }
+}
@@ -0,0 +1,137 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Hamming distance of two sequences computed on whole longs (SWAR - SIMD within a register). Packed sequences with the same packing
+ * are compared directly, 32 nucleotides or 12 residues in one long. Other sequences are compared as bytes, 8 residues in one long.
+ * Residues which do not fill the whole long are compared by the scalar loop.
+ */
+public class HammingKernel {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Lowest bit of every residue in a long, for 2, 5 and 8 bits per residue.
+     */
+    private static final long LOW_BITS_2 = 0x5555555555555555L;
+    private static final long LOW_BITS_5 = 0x0084210842108421L;
+    private static final long LOW_BITS_7 = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS_8 = 0x8080808080808080L;
+
+    /**
+     * Calculates Hamming distance of two molecules with sequences of the same length.
+     * @param first First molecule.
+     * @param second Second molecule.
+     * @return Hamming distance.
+     */
+    public static int distance(FastaData first, FastaData second) {
+        PackedSequence firstSequence = first.getPackedSequence();
+        PackedSequence secondSequence = second.getPackedSequence();
+        if (firstSequence != null && secondSequence != null && firstSequence.getBitsPerResidue() == secondSequence.getBitsPerResidue()) {
+            return distance(firstSequence, secondSequence);
+        }
+        return distance(first.getResidues(), second.getResidues());
+    }
+
+    /**
+     * Calculates Hamming distance of two sequences with the same packing. Unused bits of the last word are zero in both sequences.
+     * @param first First sequence.
+     * @param second Second sequence with the same length.
+     * @return Hamming distance.
+     */
+    public static int distance(PackedSequence first, PackedSequence second) {
+        long[] a = first.getWords();
+        long[] b = second.getWords();
+        if (a == b) {return 0;}
+        int distance = 0;
+        switch (first.getBitsPerResidue()) {
+            case 2:
+                for (int w = 0; w < a.length; w++) {
+                    long difference = a[w] ^ b[w];
+                    distance += Long.bitCount((difference | (difference >>> 1)) & LOW_BITS_2);
+                }
+                break;
+            case 5:
+                for (int w = 0; w < a.length; w++) {
+                    long difference = a[w] ^ b[w];
+                    //Lowest bit of the residue gets bits 0 - 3 of the residue and then bit 4
+                    long joined = difference | (difference >>> 1);
+                    joined |= joined >>> 2;
+                    joined |= difference >>> 4;
+                    distance += Long.bitCount(joined & LOW_BITS_5);
+                }
+                break;
+            default:
+                for (int w = 0; w < a.length; w++) {
+                    distance += differentBytes(a[w] ^ b[w]);
+                }
+                break;
+        }
+        return distance;
+    }
+
+    /**
+     * Calculates Hamming distance of two byte-encoded sequences, 8 residues at once.
+     * @param first Residues of the first sequence.
+     * @param second Residues of the second sequence with the same length.
+     * @return Hamming distance.
+     */
+    public static int distance(byte[] first, byte[] second) {
+        int distance = 0;
+        int i = 0;
+        for (; i + 8 <= first.length; i += 8) {
+            distance += differentBytes((long) LONGS.get(first, i) ^ (long) LONGS.get(second, i));
+        }
+        return distance + scalarDistance(first, second, i);
+    }
+
+    /**
+     * Calculates Hamming distance of two parts of byte-encoded sequences, 8 residues at once. Counting stops when the limit is exceeded.
+     * @param first Residues of the first sequence.
+     * @param firstOffset Start of the part in the first sequence.
+     * @param second Residues of the second sequence.
+     * @param secondOffset Start of the part in the second sequence.
+     * @param length Length of the compared parts.
+     * @param limit Maximal distance which has to be exact.
+     * @return Hamming distance or some value bigger than the limit.
+     */
+    public static int distance(byte[] first, int firstOffset, byte[] second, int secondOffset, int length, int limit) {
+        int distance = 0;
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            distance += differentBytes((long) LONGS.get(first, firstOffset + i) ^ (long) LONGS.get(second, secondOffset + i));
+            if (distance > limit) {return distance;}
+        }
+        for (; i < length; i++) {
+            if (first[firstOffset + i] != second[secondOffset + i]) {distance++;}
+        }
+        return distance;
+    }
+
+    /**
+     * Calculates Hamming distance residue by residue. Used for the ends of the sequences.
+     * @param first Residues of the first sequence.
+     * @param second Residues of the second sequence with the same length.
+     * @param from Position from which residues are compared.
+     * @return Hamming distance of the ends of the sequences.
+     */
+    public static int scalarDistance(byte[] first, byte[] second, int from) {
+        int distance = 0;
+        for (int i = from; i < first.length; i++) {
+            if (first[i] != second[i]) {distance++;}
+        }
+        return distance;
+    }
+
+    /**
+     * Counts non-zero bytes of the long without comparing the bytes one by one.
+     * @param difference XOR of 8 residues of two sequences.
+     * @return Number of different residues.
+     */
+    private static int differentBytes(long difference) {
+        //Highest bit of the byte is set if any of its lower 7 bits is set or if it was set
+        long nonZero = ((difference & LOW_BITS_7) + LOW_BITS_7) | difference;
+        return Long.bitCount(nonZero & HIGH_BITS_8);
+    }
+}
@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Hamming distances between all pairs of sequences with the same length. Every sequence is split into bit-planes: plane j contains
+ * bit j of the codes of 64 residues in one long. Residues differ if any of their bits differ, so mismatches of 64 positions are
+ * counted by XOR of the planes joined by OR and Long.bitCount. Upper triangle of the matrix is computed in tiles of sequences,
+ * which fit into the cache together, and tiles are computed on the ForkJoin pool.
+ */
+public class HammingMatrix {
+
+    /**
+     * Size of the data of sequences from two tiles, which should fit into the cache.
+     */
+    private static final int TILE_BYTES = 1 << 18;
+
+    private final int sequenceLength;
+    /**
+     * Number of bit-planes (bits of one residue code): 2 for nucleotides, 5 for one-letter code and 8 for other sequences.
+     */
+    private final int planes;
+    /**
+     * For every sequence: planes of word w are stored at positions w * planes ... (w + 1) * planes - 1.
+     * Molecules sharing one stored sequence (see SequenceDeduplicator) share also the encoded sequence.
+     */
+    private final long[][] encoded;
+
+    private HammingMatrix(int sequenceLength, int planes, long[][] encoded) {
+        this.sequenceLength = sequenceLength;
+        this.planes = planes;
+        this.encoded = encoded;
+    }
+
+    public int size() { return encoded.length; }
+    public int getSequenceLength() { return sequenceLength; }
+
+    /**
+     * Encodes sequences of the molecules into bit-planes.
+     * @param molecules Molecules with sequences of the same length.
+     * @return Encoded sequences.
+     * @throws IllegalArgumentException Sequences have different lengths.
+     */
+    public static HammingMatrix encode(List<FastaData> molecules) {
+        int sequenceLength = molecules.isEmpty() ? 0 : molecules.get(0).getSequenceLength();
+        int alphabetFlags = 0;
+        for (FastaData molecule : molecules) {
+            if (molecule.getSequenceLength() != sequenceLength) {throw new IllegalArgumentException("Sequences do not have the same length.");}
+            alphabetFlags |= alphabetFlags(molecule);
+        }
+        int planes = alphabetFlags == 0 ? 2 : (alphabetFlags == 1 ? 5 : 8);
+
+        int words = (sequenceLength + 63) / 64;
+        long[][] encoded = new long[molecules.size()][];
+        Map<PackedSequence, long[]> shared = new IdentityHashMap<>();
+        for (int m = 0; m < molecules.size(); m++) {
+            PackedSequence sequence = molecules.get(m).getPackedSequence();
+            if (sequence != null && shared.containsKey(sequence)) {
+                encoded[m] = shared.get(sequence);
+                continue;
+            }
+
+            byte[] residues = molecules.get(m).getResidues();
+            long[] bits = new long[words * planes];
+            for (int i = 0; i < residues.length; i++) {
+                int code = planes == 2 ? PackedSequence.nucleotideCode(residues[i])
+                        : (planes == 5 ? PackedSequence.residueCode(residues[i]) : residues[i] & 0xFF);
+                int offset = (i >>> 6) * planes;
+                for (int j = 0; j < planes; j++) {
+                    bits[offset + j] |= (long) ((code >>> j) & 1) << (i & 63);
+                }
+            }
+            encoded[m] = bits;
+            if (sequence != null) {shared.put(sequence, bits);}
+        }
+        return new HammingMatrix(sequenceLength, planes, encoded);
+    }
+
+    /**
+     * Gets the flags of the alphabets of the sequence (see PackedSequence.alphabetFlag).
+     * @param molecule Molecule in question.
+     * @return Bitwise or of the flags of all residues.
+     */
+    private static int alphabetFlags(FastaData molecule) {
+        PackedSequence sequence = molecule.getPackedSequence();
+        if (sequence != null) {return sequence.getBitsPerResidue() == 2 ? 0 : (sequence.getBitsPerResidue() == 5 ? 1 : 2);}
+        int flags = 0;
+        for (byte residue : molecule.getResidues()) {
+            flags |= PackedSequence.alphabetFlag(residue);
+        }
+        return flags;
+    }
+
+    /**
+     * Calculates Hamming distance of two encoded sequences.
+     * @param first Number of the first sequence.
+     * @param second Number of the second sequence.
+     * @return Hamming distance.
+     */
+    public int distance(int first, int second) { return distance(first, second, Integer.MAX_VALUE); }
+
+    /**
+     * Calculates Hamming distance of two encoded sequences, counting stops when the limit is exceeded.
+     * @param first Number of the first sequence.
+     * @param second Number of the second sequence.
+     * @param limit Maximal distance which has to be exact.
+     * @return Hamming distance or some value bigger than the limit.
+     */
+    private int distance(int first, int second, int limit) {
+        long[] a = encoded[first];
+        long[] b = encoded[second];
+        if (a == b) {return 0;}
+        int distance = 0;
+        for (int offset = 0; offset < a.length; offset += planes) {
+            long difference = 0;
+            for (int j = 0; j < planes; j++) {
+                difference |= a[offset + j] ^ b[offset + j];
+            }
+            distance += Long.bitCount(difference);
+            if (distance > limit) {break;}
+        }
+        return distance;
+    }
+
+    /**
+     * Calculates distances of all pairs.
+     * @return Condensed upper triangle of the matrix, distance of sequences i and j (i < j) is at the position index(i, j).
+     * @throws IllegalArgumentException Matrix would be too big for one array.
+     */
+    public int[] condensedMatrix() {
+        long pairs = (long) size() * (size() - 1) / 2;
+        if (pairs > Integer.MAX_VALUE - 8) {throw new IllegalArgumentException("Too many sequences for the whole matrix.");}
+        int[] matrix = new int[(int) pairs];
+        computeTiles((i, j) -> matrix[index(i, j)] = distance(i, j));
+        return matrix;
+    }
+
+    /**
+     * Gets the position of the pair in the condensed matrix.
+     * @param first Number of the first sequence.
+     * @param second Number of the second sequence, bigger than the first.
+     * @return Position in the condensed matrix.
+     */
+    public int index(int first, int second) {
+        return (int) ((long) first * size() - (long) first * (first + 1) / 2 + (second - first - 1));
+    }
+
+    /**
+     * Finds all pairs of sequences with the distance at most maxDistance.
+     * @param maxDistance Maximal Hamming distance.
+     * @return Triples (first sequence, second sequence, distance) in one list, ordered by the first and second sequence.
+     */
+    public IntList pairsWithin(int maxDistance) {
+        //Every row of the matrix has its own list, tiles with the same rows add into it one at a time
+        IntList[] rows = new IntList[size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new IntList();
+        }
+        computeTiles((i, j) -> {
+            int distance = distance(i, j, maxDistance);
+            if (distance <= maxDistance) {
+                synchronized (rows[i]) {
+                    rows[i].add(j);
+                    rows[i].add(distance);
+                }
+            }
+        });
+
+        IntList pairs = new IntList();
+        for (int i = 0; i < rows.length; i++) {
+            int[] row = rows[i].toArray();
+            sortPairs(row);
+            for (int k = 0; k < row.length; k += 2) {
+                pairs.add(i);
+                pairs.add(row[k]);
+                pairs.add(row[k + 1]);
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Sorts pairs (second sequence, distance) by the second sequence. Rows are filled by more tiles in any order.
+     * @param row Pairs stored one after another.
+     */
+    private static void sortPairs(int[] row) {
+        long[] packed = new long[row.length / 2];
+        for (int k = 0; k < packed.length; k++) {
+            packed[k] = ((long) row[2 * k] << 32) | row[2 * k + 1];
+        }
+        Arrays.sort(packed);
+        for (int k = 0; k < packed.length; k++) {
+            row[2 * k] = (int) (packed[k] >>> 32);
+            row[2 * k + 1] = (int) packed[k];
+        }
+    }
+
+    /**
+     * Action done for one pair of sequences.
+     */
+    private interface PairAction {
+        void compute(int first, int second);
+    }
+
+    /**
+     * Splits the upper triangle into tiles and computes them on the ForkJoin pool.
+     * @param action Action done for every pair (i, j) with i < j.
+     */
+    private void computeTiles(PairAction action) {
+        int tile = Math.max(1, Math.min(256, TILE_BYTES / Math.max(1, 16 * planes * ((sequenceLength + 63) / 64))));
+        List<int[]> tiles = new ArrayList<>();
+        for (int row = 0; row < size(); row += tile) {
+            for (int column = row; column < size(); column += tile) {
+                tiles.add(new int[] {row, Math.min(size(), row + tile), column, Math.min(size(), column + tile)});
+            }
+        }
+        ForkJoinPool.commonPool().invoke(new TileTask(tiles, 0, tiles.size(), action));
+    }
+
+    /**
+     * Computes tiles from the range, splits the range in half while it contains more tiles.
+     */
+    private static class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<int[]> tiles;
+        private final int from;
+        private final int to;
+        private final PairAction action;
+
+        TileTask(List<int[]> tiles, int from, int to, PairAction action) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, middle, action), new TileTask(tiles, middle, to, action));
+                return;
+            }
+            for (int t = from; t < to; t++) {
+                int[] tile = tiles.get(t);
+                for (int i = tile[0]; i < tile[1]; i++) {
+                    for (int j = Math.max(tile[2], i + 1); j < tile[3]; j++) {
+                        action.compute(i, j);
+                    }
+                }
+            }
+        }
+    }
+}
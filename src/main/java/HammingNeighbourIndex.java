@@ -0,0 +1,166 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index for finding all sequences within the maximal Hamming distance of a query (e.g. barcodes). Sequences of the same length are
+ * split into maxDistance + 1 segments. Sequences with at most maxDistance mismatches have at least one identical segment (pigeonhole
+ * principle), so candidates are found by exact lookup of every segment of the query and then verified.
+ */
+public class HammingNeighbourIndex {
+
+    private final int sequenceLength;
+    private final int maxDistance;
+    private final long fingerprint;
+    /**
+     * Residues of all sequences one after another.
+     */
+    private final byte[] residues;
+    /**
+     * Positions of the borders of the segments, including 0 and length of the sequences.
+     */
+    private final int[] borders;
+    /**
+     * For every segment: hash of the segment -> its number in the segment table.
+     */
+    private final LongIntHashMap[] segmentNumbers;
+    /**
+     * For every segment: sequences with segment number i are stored in members between offsets[i] and offsets[i + 1].
+     */
+    private final int[][] offsets;
+    private final int[][] members;
+
+    private HammingNeighbourIndex(int sequenceLength, int maxDistance, long fingerprint, byte[] residues) {
+        this.sequenceLength = sequenceLength;
+        this.maxDistance = maxDistance;
+        this.fingerprint = fingerprint;
+        this.residues = residues;
+        int segments = maxDistance + 1;
+        this.borders = new int[segments + 1];
+        for (int s = 0; s <= segments; s++) {
+            borders[s] = (int) ((long) sequenceLength * s / segments);
+        }
+        this.segmentNumbers = new LongIntHashMap[segments];
+        this.offsets = new int[segments][];
+        this.members = new int[segments][];
+    }
+
+    public int getSequenceLength() { return sequenceLength; }
+    public int getMaxDistance() { return maxDistance; }
+
+    /**
+     * Builds the index.
+     * @param molecules Molecules with sequences of the same length.
+     * @param maxDistance Maximal distance of the queries.
+     * @return Built index.
+     * @throws IllegalArgumentException Sequences have different lengths or the distance is negative.
+     */
+    public static HammingNeighbourIndex build(List<FastaData> molecules, int maxDistance) {
+        if (maxDistance < 0) {throw new IllegalArgumentException("Maximal distance cannot be negative.");}
+        int sequenceLength = molecules.isEmpty() ? 0 : molecules.get(0).getSequenceLength();
+        if ((long) sequenceLength * molecules.size() > Integer.MAX_VALUE - 8) {throw new IllegalArgumentException("Too many sequences.");}
+
+        byte[] residues = new byte[sequenceLength * molecules.size()];
+        for (int m = 0; m < molecules.size(); m++) {
+            FastaData molecule = molecules.get(m);
+            if (molecule.getSequenceLength() != sequenceLength) {throw new IllegalArgumentException("Sequences do not have the same length.");}
+            if (molecule.getPackedSequence() != null) {
+                molecule.getPackedSequence().copyTo(0, sequenceLength, residues, m * sequenceLength);
+            } else {
+                System.arraycopy(molecule.getResidues(), 0, residues, m * sequenceLength, sequenceLength);
+            }
+        }
+
+        HammingNeighbourIndex index = new HammingNeighbourIndex(sequenceLength, maxDistance, FastaData.fingerprint(molecules), residues);
+        for (int s = 0; s < index.segmentNumbers.length; s++) {
+            index.buildSegment(s, molecules.size());
+        }
+        return index;
+    }
+
+    /**
+     * Builds the table of one segment. Sequences are sorted by the numbers of their segments (counting sort).
+     * @param segment Number of the segment.
+     * @param count Number of the sequences.
+     */
+    private void buildSegment(int segment, int count) {
+        LongIntHashMap numbers = new LongIntHashMap(1 << 10);
+        IntList counts = new IntList();
+        int[] numberOfSequence = new int[count];
+        for (int m = 0; m < count; m++) {
+            long hash = segmentHash(residues, m * sequenceLength + borders[segment], borders[segment + 1] - borders[segment]);
+            int number = numbers.get(hash);
+            if (number == -1) {
+                number = counts.size();
+                numbers.put(hash, number);
+                counts.add(0);
+            }
+            counts.set(number, counts.get(number) + 1);
+            numberOfSequence[m] = number;
+        }
+
+        int[] segmentOffsets = new int[counts.size() + 1];
+        for (int i = 0; i < counts.size(); i++) {
+            segmentOffsets[i + 1] = segmentOffsets[i] + counts.get(i);
+        }
+        int[] next = Arrays.copyOf(segmentOffsets, counts.size());
+        int[] segmentMembers = new int[count];
+        for (int m = 0; m < count; m++) {
+            segmentMembers[next[numberOfSequence[m]]++] = m;
+        }
+
+        segmentNumbers[segment] = numbers;
+        offsets[segment] = segmentOffsets;
+        members[segment] = segmentMembers;
+    }
+
+    /**
+     * Computes 64-bit hash of the segment. Different segments with the same hash only add candidates, which are rejected later.
+     * @param residues Array with the residues.
+     * @param start Start of the segment.
+     * @param length Length of the segment.
+     * @return Hash of the segment.
+     */
+    private static long segmentHash(byte[] residues, int start, int length) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = start; i < start + length; i++) {
+            hash = (hash ^ residues[i]) * 0x100000001B3L;
+        }
+        return hash ^ (hash >>> 29);
+    }
+
+    public boolean isIndexOf(List<FastaData> molecules) { return fingerprint == FastaData.fingerprint(molecules); }
+
+    /**
+     * Finds all sequences within the distance of the query.
+     * @param query Query sequence with the same length as indexed sequences.
+     * @param distance Maximal distance, at most maxDistance of the index.
+     * @return Found sequences as (number of the molecule shifted by 32 bits | distance), sorted by the molecules.
+     * @throws IllegalArgumentException Query has different length or distance is bigger than maxDistance of the index.
+     */
+    public long[] find(String query, int distance) {
+        if (query.length() != sequenceLength) {throw new IllegalArgumentException("Query does not have the same length as sequences.");}
+        if (distance > maxDistance) {throw new IllegalArgumentException("Distance is bigger than the maximal distance of the index.");}
+        byte[] queryResidues = query.getBytes(StandardCharsets.ISO_8859_1);
+
+        //Candidates from all segments, every candidate is verified only once
+        IntList candidates = new IntList();
+        for (int s = 0; s < segmentNumbers.length; s++) {
+            int number = segmentNumbers[s].get(segmentHash(queryResidues, borders[s], borders[s + 1] - borders[s]));
+            if (number == -1) {continue;}
+            for (int i = offsets[s][number]; i < offsets[s][number + 1]; i++) {
+                candidates.add(members[s][i]);
+            }
+        }
+        int[] sorted = candidates.toArray();
+        Arrays.sort(sorted);
+
+        LongList found = new LongList();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {continue;}
+            int mismatches = HammingKernel.distance(queryResidues, 0, residues, sorted[i] * sequenceLength, sequenceLength, distance);
+            if (mismatches <= distance) {found.add(((long) sorted[i] << 32) | mismatches);}
+        }
+        return found.toArray();
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * One optimal alignment (by edit distance) computed by Hirschberg's algorithm in linear memory. The first sequence is split in half,
+ * the position in the second sequence where an optimal alignment crosses the middle is found from the last rows of dynamic
+ * programming computed forward and backward, and both halves are aligned independently on the ForkJoin pool.
+ */
+public class HirschbergAligner {
+
+    /**
+     * Operations of the alignment. Operation starting at the position (i, j) of the matrix is stored at the index i + j, because
+     * every operation increases i + j, so operations of the halves never overlap.
+     */
+    private static final byte DIAGONAL = 1;
+    private static final byte GAP_IN_SECOND = 2;
+    private static final byte GAP_IN_FIRST = 3;
+
+    /**
+     * Parts with fewer cells are aligned by the whole matrix.
+     */
+    private static final int SMALL_CELLS = 1 << 12;
+    /**
+     * Parts with fewer cells are not split into parallel tasks.
+     */
+    private static final long PARALLEL_CELLS = 1L << 20;
+
+    private final char[] firstSeq;
+    private final char[] secondSeq;
+    private final byte[] operations;
+
+    private HirschbergAligner(char[] firstSeq, char[] secondSeq) {
+        this.firstSeq = firstSeq;
+        this.secondSeq = secondSeq;
+        this.operations = new byte[firstSeq.length + secondSeq.length + 1];
+    }
+
+    /**
+     * Computes one optimal alignment.
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     * @return Aligned first sequence and aligned second sequence (with '-' for gaps), both written from the end.
+     */
+    public static StringBuilder[] align(char[] firstSeq, char[] secondSeq) {
+        HirschbergAligner aligner = new HirschbergAligner(firstSeq, secondSeq);
+        ForkJoinPool.commonPool().invoke(aligner.new AlignTask(0, firstSeq.length, 0, secondSeq.length));
+
+        //Alignment is built from the end, same as in backtracking
+        StringBuilder alignedFirstSeq = new StringBuilder();
+        StringBuilder alignedSecondSeq = new StringBuilder();
+        int i = 0;
+        int j = 0;
+        byte[] steps = new byte[firstSeq.length + secondSeq.length];
+        int stepCount = 0;
+        while (i < firstSeq.length || j < secondSeq.length) {
+            byte operation = aligner.operations[i + j];
+            steps[stepCount++] = operation;
+            if (operation != GAP_IN_FIRST) {i++;}
+            if (operation != GAP_IN_SECOND) {j++;}
+        }
+        for (int step = stepCount - 1; step >= 0; step--) {
+            if (steps[step] != GAP_IN_FIRST) {i--;}
+            if (steps[step] != GAP_IN_SECOND) {j--;}
+            alignedFirstSeq.append(steps[step] == GAP_IN_FIRST ? '-' : firstSeq[i]);
+            alignedSecondSeq.append(steps[step] == GAP_IN_SECOND ? '-' : secondSeq[j]);
+        }
+        return new StringBuilder[] {alignedFirstSeq, alignedSecondSeq};
+    }
+
+    /**
+     * Calculates edit distance of the alignment.
+     * @param alignedFirstSeq Aligned first sequence.
+     * @param alignedSecondSeq Aligned second sequence.
+     * @return Number of mismatches and gaps.
+     */
+    public static int distanceOf(StringBuilder alignedFirstSeq, StringBuilder alignedSecondSeq) {
+        int distance = 0;
+        for (int i = 0; i < alignedFirstSeq.length(); i++) {
+            if (alignedFirstSeq.charAt(i) != alignedSecondSeq.charAt(i)) {distance++;}
+        }
+        return distance;
+    }
+
+    /**
+     * Aligns the part firstSeq[firstFrom, firstTo) with secondSeq[secondFrom, secondTo).
+     */
+    private class AlignTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstFrom;
+        private final int firstTo;
+        private final int secondFrom;
+        private final int secondTo;
+
+        AlignTask(int firstFrom, int firstTo, int secondFrom, int secondTo) {
+            this.firstFrom = firstFrom;
+            this.firstTo = firstTo;
+            this.secondFrom = secondFrom;
+            this.secondTo = secondTo;
+        }
+
+        @Override
+        protected void compute() {
+            long cells = (long) (firstTo - firstFrom) * (secondTo - secondFrom);
+            if (firstTo - firstFrom <= 1 || secondTo - secondFrom <= 1 || cells <= SMALL_CELLS) {
+                alignWholeMatrix(firstFrom, firstTo, secondFrom, secondTo);
+                return;
+            }
+
+            //Row of the first sequence in the middle and the best column where alignment crosses it
+            int middle = (firstFrom + firstTo) >>> 1;
+            int[] forward;
+            int[] backward;
+            if (cells >= PARALLEL_CELLS) {
+                RowTask forwardTask = new RowTask(firstFrom, middle, secondFrom, secondTo, false);
+                RowTask backwardTask = new RowTask(middle, firstTo, secondFrom, secondTo, true);
+                invokeAll(forwardTask, backwardTask);
+                forward = forwardTask.row;
+                backward = backwardTask.row;
+            } else {
+                forward = lastRow(firstFrom, middle, secondFrom, secondTo, false);
+                backward = lastRow(middle, firstTo, secondFrom, secondTo, true);
+            }
+            int split = 0;
+            for (int j = 1; j < forward.length; j++) {
+                if (forward[j] + backward[j] < forward[split] + backward[split]) {split = j;}
+            }
+
+            AlignTask upper = new AlignTask(firstFrom, middle, secondFrom, secondFrom + split);
+            AlignTask lower = new AlignTask(middle, firstTo, secondFrom + split, secondTo);
+            if (cells >= PARALLEL_CELLS) {
+                invokeAll(upper, lower);
+            } else {
+                upper.compute();
+                lower.compute();
+            }
+        }
+    }
+
+    /**
+     * Computes one of the last rows for the split of the task.
+     */
+    private class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstFrom;
+        private final int firstTo;
+        private final int secondFrom;
+        private final int secondTo;
+        private final boolean backward;
+        private int[] row;
+
+        RowTask(int firstFrom, int firstTo, int secondFrom, int secondTo, boolean backward) {
+            this.firstFrom = firstFrom;
+            this.firstTo = firstTo;
+            this.secondFrom = secondFrom;
+            this.secondTo = secondTo;
+            this.backward = backward;
+        }
+
+        @Override
+        protected void compute() { row = lastRow(firstFrom, firstTo, secondFrom, secondTo, backward); }
+    }
+
+    /**
+     * Computes the last row of dynamic programming with two rows.
+     * @param firstFrom Start of the part of the first sequence.
+     * @param firstTo End of the part of the first sequence.
+     * @param secondFrom Start of the part of the second sequence.
+     * @param secondTo End of the part of the second sequence.
+     * @param backward False - value j is distance of the first part and secondSeq[secondFrom, secondFrom + j).
+     *                 True - value j is distance of the first part and secondSeq[secondFrom + j, secondTo).
+     * @return Row with secondTo - secondFrom + 1 values.
+     */
+    private int[] lastRow(int firstFrom, int firstTo, int secondFrom, int secondTo, boolean backward) {
+        int columns = secondTo - secondFrom;
+        int[] previous = new int[columns + 1];
+        int[] current = new int[columns + 1];
+        for (int j = 0; j <= columns; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= firstTo - firstFrom; i++) {
+            current[0] = i;
+            char symbol = backward ? firstSeq[firstTo - i] : firstSeq[firstFrom + i - 1];
+            for (int j = 1; j <= columns; j++) {
+                char other = backward ? secondSeq[secondTo - j] : secondSeq[secondFrom + j - 1];
+                int sameSymbol = symbol == other ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + sameSymbol);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        if (!backward) {return previous;}
+
+        //Backward row is indexed from the end of the second part
+        int[] reversed = new int[columns + 1];
+        for (int j = 0; j <= columns; j++) {
+            reversed[j] = previous[columns - j];
+        }
+        return reversed;
+    }
+
+    /**
+     * Aligns small part by the whole matrix and backtracking of one optimal path.
+     * @param firstFrom Start of the part of the first sequence.
+     * @param firstTo End of the part of the first sequence.
+     * @param secondFrom Start of the part of the second sequence.
+     * @param secondTo End of the part of the second sequence.
+     */
+    private void alignWholeMatrix(int firstFrom, int firstTo, int secondFrom, int secondTo) {
+        int rows = firstTo - firstFrom;
+        int columns = secondTo - secondFrom;
+        int[][] matrix = new int[rows + 1][columns + 1];
+        for (int i = 0; i <= rows; i++) {
+            matrix[i][0] = i;
+        }
+        for (int j = 0; j <= columns; j++) {
+            matrix[0][j] = j;
+        }
+        for (int i = 1; i <= rows; i++) {
+            for (int j = 1; j <= columns; j++) {
+                int sameSymbol = firstSeq[firstFrom + i - 1] == secondSeq[secondFrom + j - 1] ? 0 : 1;
+                matrix[i][j] = Math.min(Math.min(matrix[i][j - 1], matrix[i - 1][j]) + 1, matrix[i - 1][j - 1] + sameSymbol);
+            }
+        }
+
+        int i = rows;
+        int j = columns;
+        while (i > 0 || j > 0) {
+            int start = firstFrom + secondFrom + i + j;
+            if (i > 0 && j > 0 && matrix[i][j] == matrix[i - 1][j - 1] + (firstSeq[firstFrom + i - 1] == secondSeq[secondFrom + j - 1] ? 0 : 1)) {
+                operations[start - 2] = DIAGONAL;
+                i--;
+                j--;
+            } else if (i > 0 && matrix[i][j] == matrix[i - 1][j] + 1) {
+                operations[start - 1] = GAP_IN_SECOND;
+                i--;
+            } else {
+                operations[start - 1] = GAP_IN_FIRST;
+                j--;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive ints. Used for lists of molecule numbers in indexes, where List<Integer> would be too big.
+ */
+public class IntList {
+    private int[] values;
+    private int size = 0;
+
+    public IntList() { values = new int[4]; }
+
+    public IntList(int capacity) { values = new int[Math.max(capacity, 1)]; }
+
+    public void add(int value) {
+        if (size == values.length) {values = Arrays.copyOf(values, size * 2);}
+        values[size++] = value;
+    }
+
+    public int get(int index) { return values[index]; }
+    public void set(int index, int value) { values[index] = value; }
+    public int size() { return size; }
+    public void clear() { size = 0; }
+
+    /**
+     * Gets the last added value.
+     * @return Last value or -1 if list is empty.
+     */
+    public int last() { return size == 0 ? -1 : values[size - 1]; }
+
+    public int[] toArray() { return Arrays.copyOf(values, size); }
+}
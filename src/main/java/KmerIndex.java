@@ -0,0 +1,368 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Index of all k-mers in the sequences of loaded molecules. For every k-mer it stores positions of its occurrences as
+ * (number of the molecule, position in the sequence) packed into one long. K-mers are split into partitions by their hash,
+ * every partition is built by its own thread and has its own hash table with primitive keys.
+ */
+public class KmerIndex {
+
+    /**
+     * Maximal length of k-mer, 12 residues with 5 bits fit into one long.
+     */
+    public static final int MAX_K = 12;
+    private static final int FILE_VERSION = 1;
+
+    private final int k;
+    private final long fingerprint;
+    /**
+     * For every partition: k-mer -> its number in the partition.
+     */
+    private final LongIntHashMap[] kmerNumbers;
+    /**
+     * For every partition: occurrences of k-mer with number i are stored in hits between offsets[i] and offsets[i + 1].
+     */
+    private final int[][] offsets;
+    private final long[][] hits;
+
+    private KmerIndex(int k, long fingerprint, int partitions) {
+        this.k = k;
+        this.fingerprint = fingerprint;
+        this.kmerNumbers = new LongIntHashMap[partitions];
+        this.offsets = new int[partitions][];
+        this.hits = new long[partitions][];
+    }
+
+    public int getK() { return k; }
+
+    /**
+     * Builds the index in two parallel phases. Every thread first decodes a contiguous slice of the molecules once and scatters
+     * the occurrences of their k-mers into its own buffers of the partitions, then every partition is numbered and sorted by its own thread.
+     * @param molecules Molecules which sequences are indexed.
+     * @param k Length of the k-mers (1 - MAX_K).
+     * @return Built index.
+     */
+    public static KmerIndex build(List<FastaData> molecules, int k) {
+        int partitions = Runtime.getRuntime().availableProcessors();
+        KmerIndex index = new KmerIndex(k, FastaData.fingerprint(molecules), partitions);
+        //Buffers of the thread t for the partition p: kmers[t][p] and positions[t][p]
+        LongList[][] kmers = new LongList[partitions][partitions];
+        LongList[][] positions = new LongList[partitions][partitions];
+
+        ExecutorService pool = Executors.newFixedThreadPool(partitions);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < partitions; t++) {
+                int thread = t;
+                int from = (int) ((long) molecules.size() * t / partitions);
+                int to = (int) ((long) molecules.size() * (t + 1) / partitions);
+                futures.add(pool.submit(() -> index.scatter(molecules, from, to, kmers[thread], positions[thread])));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            futures.clear();
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                futures.add(pool.submit(() -> index.buildPartition(kmers, positions, partition)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        return index;
+    }
+
+    /**
+     * Finds all k-mers of the slice of the molecules and appends them with their positions to the buffers of their partitions.
+     * @param molecules Indexed molecules.
+     * @param from First molecule of the slice.
+     * @param to Molecule after the slice.
+     * @param kmers Buffers of k-mers of this thread, one for every partition.
+     * @param positions Buffers of positions of this thread, one for every partition.
+     */
+    private void scatter(List<FastaData> molecules, int from, int to, LongList[] kmers, LongList[] positions) {
+        int partitions = hits.length;
+        for (int p = 0; p < partitions; p++) {
+            kmers[p] = new LongList();
+            positions[p] = new LongList();
+        }
+
+        for (int m = from; m < to; m++) {
+            byte[] residues = molecules.get(m).getResidues();
+            long kmer = 0;
+            int valid = 0;
+            for (int i = 0; i < residues.length; i++) {
+                int code = PackedSequence.residueCode(residues[i]);
+                //Residues which are not in one-letter code are not indexed
+                if (code == -1) {
+                    valid = 0;
+                    continue;
+                }
+                kmer = ((kmer << 5) | code) & kmerMask();
+                if (++valid < k) {continue;}
+                int partition = Math.floorMod(LongIntHashMap.hash(kmer), partitions);
+                kmers[partition].add(kmer);
+                positions[partition].add(((long) m << 32) | (i - k + 1));
+            }
+        }
+    }
+
+    /**
+     * Builds one partition from the buffers of all threads. Buffers are read in the order of the slices, so occurrences are in
+     * the order of the molecules, and then they are sorted by k-mers (counting sort).
+     * @param kmers Buffers of k-mers, kmers[thread][partition].
+     * @param positions Buffers of positions, positions[thread][partition].
+     * @param partition Number of the partition.
+     */
+    private void buildPartition(LongList[][] kmers, LongList[][] positions, int partition) {
+        LongIntHashMap numbers = new LongIntHashMap(1 << 10);
+        IntList counts = new IntList();
+        IntList kmerOfHit = new IntList();
+        for (LongList[] threadKmers : kmers) {
+            LongList partitionKmers = threadKmers[partition];
+            threadKmers[partition] = null;
+            for (int i = 0; i < partitionKmers.size(); i++) {
+                long kmer = partitionKmers.get(i);
+                int number = numbers.get(kmer);
+                if (number == -1) {
+                    number = counts.size();
+                    numbers.put(kmer, number);
+                    counts.add(0);
+                }
+                counts.set(number, counts.get(number) + 1);
+                kmerOfHit.add(number);
+            }
+        }
+
+        //Counting sort by k-mer numbers, order of the occurrences of one k-mer is kept
+        int[] partitionOffsets = new int[counts.size() + 1];
+        for (int i = 0; i < counts.size(); i++) {
+            partitionOffsets[i + 1] = partitionOffsets[i] + counts.get(i);
+        }
+        int[] next = Arrays.copyOf(partitionOffsets, counts.size());
+        long[] partitionHits = new long[kmerOfHit.size()];
+        int hit = 0;
+        for (int t = 0; t < kmers.length; t++) {
+            LongList partitionPositions = positions[t][partition];
+            for (int i = 0; i < partitionPositions.size(); i++) {
+                partitionHits[next[kmerOfHit.get(hit++)]++] = partitionPositions.get(i);
+            }
+            positions[t][partition] = null;
+        }
+
+        kmerNumbers[partition] = numbers;
+        offsets[partition] = partitionOffsets;
+        hits[partition] = partitionHits;
+    }
+
+    private long kmerMask() { return (1L << (5 * k)) - 1; }
+
+    /**
+     * Finds all occurrences of the motif. Motifs shorter than k or with residues outside of the one-letter code are searched
+     * in the sequences directly.
+     * @param molecules Indexed molecules.
+     * @param motif Searched motif.
+     * @return Occurrences as (number of the molecule shifted by 32 bits | position of the motif, 0-based), sorted.
+     */
+    public long[] find(List<FastaData> molecules, String motif) {
+        byte[] motifResidues = motif.getBytes(StandardCharsets.ISO_8859_1);
+        long[] codes = new long[Math.max(0, motifResidues.length - k + 1)];
+        long kmer = 0;
+        for (int i = 0; i < motifResidues.length; i++) {
+            int code = PackedSequence.residueCode(motifResidues[i]);
+            if (code == -1) {return scan(molecules, motifResidues);}
+            kmer = ((kmer << 5) | code) & kmerMask();
+            if (i >= k - 1) {codes[i - k + 1] = kmer;}
+        }
+        if (codes.length == 0) {return scan(molecules, motifResidues);}
+
+        //K-mer of the motif with the fewest occurrences
+        int bestShift = -1;
+        int bestCount = Integer.MAX_VALUE;
+        for (int shift = 0; shift < codes.length; shift++) {
+            int partition = Math.floorMod(LongIntHashMap.hash(codes[shift]), hits.length);
+            int number = kmerNumbers[partition].get(codes[shift]);
+            if (number == -1) {return new long[0];}
+            int count = offsets[partition][number + 1] - offsets[partition][number];
+            if (count < bestCount) {
+                bestCount = count;
+                bestShift = shift;
+            }
+        }
+
+        //Checking the candidates
+        int partition = Math.floorMod(LongIntHashMap.hash(codes[bestShift]), hits.length);
+        int number = kmerNumbers[partition].get(codes[bestShift]);
+        LongList found = new LongList();
+        for (int i = offsets[partition][number]; i < offsets[partition][number + 1]; i++) {
+            int molecule = (int) (hits[partition][i] >>> 32);
+            int start = (int) hits[partition][i] - bestShift;
+            if (matches(molecules.get(molecule), start, motifResidues)) {found.add(((long) molecule << 32) | start);}
+        }
+        return found.toArray();
+    }
+
+    /**
+     * Receives occurrences of the k-mers of a query.
+     */
+    public interface SeedConsumer {
+        void accept(int queryPosition, int molecule, int position);
+    }
+
+    /**
+     * Finds occurrences of every k-mer of the query, used as seeds of the similarity search. K-mers with residues outside of the
+     * one-letter code are skipped, same as in the index.
+     * @param query Residues of the query.
+     * @param maxOccurrences K-mers with more occurrences (e.g. low complexity regions) are skipped.
+     * @param consumer Receives position of the k-mer in the query and every its occurrence.
+     */
+    public void findSeeds(byte[] query, int maxOccurrences, SeedConsumer consumer) {
+        long kmer = 0;
+        int valid = 0;
+        for (int i = 0; i < query.length; i++) {
+            int code = PackedSequence.residueCode(query[i]);
+            if (code == -1) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 5) | code) & kmerMask();
+            if (++valid < k) {continue;}
+
+            int partition = Math.floorMod(LongIntHashMap.hash(kmer), hits.length);
+            int number = kmerNumbers[partition].get(kmer);
+            if (number == -1 || offsets[partition][number + 1] - offsets[partition][number] > maxOccurrences) {continue;}
+            for (int h = offsets[partition][number]; h < offsets[partition][number + 1]; h++) {
+                consumer.accept(i - k + 1, (int) (hits[partition][h] >>> 32), (int) hits[partition][h]);
+            }
+        }
+    }
+
+    /**
+     * Searches the motif in all sequences without the index.
+     * @param molecules Molecules in question.
+     * @param motif Residues of the motif.
+     * @return Occurrences in the same format as in the find method.
+     */
+    private static long[] scan(List<FastaData> molecules, byte[] motif) {
+        LongList found = new LongList();
+        for (int m = 0; m < molecules.size(); m++) {
+            byte[] residues = molecules.get(m).getResidues();
+            for (int start = 0; start + motif.length <= residues.length; start++) {
+                if (matches(residues, start, motif)) {found.add(((long) m << 32) | start);}
+            }
+        }
+        return found.toArray();
+    }
+
+    /**
+     * Checks whether the motif occurs at the position of the sequence. Sequence is not unpacked.
+     * @param molecule Molecule in question.
+     * @param start Position of the motif in the sequence.
+     * @param motif Residues of the motif.
+     * @return True if the motif occurs at the position.
+     */
+    private static boolean matches(FastaData molecule, int start, byte[] motif) {
+        if (start < 0 || start + motif.length > molecule.getSequenceLength()) {return false;}
+        PackedSequence sequence = molecule.getPackedSequence();
+        if (sequence == null) {return matches(molecule.getSubsequence(start, start + motif.length).getBytes(StandardCharsets.ISO_8859_1), 0, motif);}
+        for (int i = 0; i < motif.length; i++) {
+            if (sequence.residueAt(start + i) != motif[i]) {return false;}
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] residues, int start, byte[] motif) {
+        if (start < 0 || start + motif.length > residues.length) {return false;}
+        for (int i = 0; i < motif.length; i++) {
+            if (residues[start + i] != motif[i]) {return false;}
+        }
+        return true;
+    }
+
+    public boolean isIndexOf(List<FastaData> molecules) { return fingerprint == FastaData.fingerprint(molecules); }
+
+    /**
+     * Saves the index into the file.
+     * @param fileName Path to the file.
+     * @throws IOException Writing into the file.
+     */
+    public void save(String fileName) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName)), 1 << 16))) {
+            output.writeInt(FILE_VERSION);
+            output.writeInt(k);
+            output.writeLong(fingerprint);
+            output.writeInt(hits.length);
+            for (int p = 0; p < hits.length; p++) {
+                //K-mers in the order of their numbers
+                long[] kmers = new long[offsets[p].length - 1];
+                for (long kmer : kmerNumbers[p].keys()) {
+                    kmers[kmerNumbers[p].get(kmer)] = kmer;
+                }
+                output.writeInt(kmers.length);
+                for (int i = 0; i < kmers.length; i++) {
+                    output.writeLong(kmers[i]);
+                    output.writeInt(offsets[p][i + 1] - offsets[p][i]);
+                }
+                output.writeInt(hits[p].length);
+                for (long hit : hits[p]) {
+                    output.writeLong(hit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the index from the file.
+     * @param fileName Path to the file.
+     * @return Loaded index or null if the file does not contain index of the current version.
+     * @throws IOException Reading of the file.
+     */
+    public static KmerIndex load(String fileName) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), 1 << 16))) {
+            if (input.readInt() != FILE_VERSION) {return null;}
+            int k = input.readInt();
+            long fingerprint = input.readLong();
+            KmerIndex index = new KmerIndex(k, fingerprint, input.readInt());
+            for (int p = 0; p < index.hits.length; p++) {
+                int kmerCount = input.readInt();
+                index.kmerNumbers[p] = new LongIntHashMap(kmerCount);
+                index.offsets[p] = new int[kmerCount + 1];
+                for (int i = 0; i < kmerCount; i++) {
+                    index.kmerNumbers[p].put(input.readLong(), i);
+                    index.offsets[p][i + 1] = index.offsets[p][i] + input.readInt();
+                }
+                index.hits[p] = new long[input.readInt()];
+                for (int i = 0; i < index.hits[p].length; i++) {
+                    index.hits[p][i] = input.readLong();
+                }
+            }
+            return index;
+        }
+    }
+}
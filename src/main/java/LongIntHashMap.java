@@ -0,0 +1,105 @@
+/**
+ * Hash table with primitive long keys and int values (open addressing with linear probing). Used in indexes instead of
+ * HashMap<Long, Integer>, where boxed keys would take most of the memory and time.
+ */
+public class LongIntHashMap {
+    private long[] keys;
+    /**
+     * Stored values are increased by one, so 0 marks an empty slot.
+     */
+    private int[] values;
+    private int size = 0;
+    private int mask;
+
+    /**
+     * @param expectedSize Expected number of keys. Table grows when needed.
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2L && capacity < (1 << 30)) {capacity <<= 1;}
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Gets the value assigned to the key.
+     * @param key Key in question.
+     * @return Value or -1 if key is not present.
+     */
+    public int get(long key) {
+        int slot = hash(key) & mask;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {return values[slot] - 1;}
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Assigns value to the key.
+     * @param key Key of the value.
+     * @param value Non-negative value.
+     */
+    public void put(long key, int value) {
+        if ((size + 1) * 2L > keys.length) {grow();}
+        int slot = hash(key) & mask;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value + 1;
+        size++;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Gets all keys in the table.
+     * @return Array of keys in no particular order.
+     */
+    public long[] keys() {
+        long[] found = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != 0) {found[count++] = keys[i];}
+        }
+        return found;
+    }
+
+    /**
+     * Doubles the size of the table.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == 0) {continue;}
+            int slot = hash(oldKeys[i]) & mask;
+            while (values[slot] != 0) {slot = (slot + 1) & mask;}
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * Finalization step of MurmurHash3, spreads the bits of the key.
+     * @param key Key which should be hashed.
+     * @return Hash of the key.
+     */
+    public static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,24 @@
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive longs. Used for positions of hits in indexes, where List<Long> would be too big.
+ */
+public class LongList {
+    private long[] values;
+    private int size = 0;
+
+    public LongList() { values = new long[4]; }
+
+    public LongList(int capacity) { values = new long[Math.max(capacity, 1)]; }
+
+    public void add(long value) {
+        if (size == values.length) {values = Arrays.copyOf(values, size * 2);}
+        values[size++] = value;
+    }
+
+    public long get(int index) { return values[index]; }
+    public int size() { return size; }
+    public void clear() { size = 0; }
+
+    public long[] toArray() { return Arrays.copyOf(values, size); }
+}
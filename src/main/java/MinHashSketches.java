@@ -0,0 +1,286 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MinHash sketches of the sequences for estimating Jaccard similarity of their sets of k-mers. One permutation hashing is used:
+ * hashes of k-mers are split into sketchSize bins by their upper bits and every bin keeps the minimal lower bits. Empty bins are
+ * filled from the next non-empty bin (densification), so sketches of short sequences can be compared too. Similar pairs are found
+ * by LSH: sketches are split into bands and only molecules with an identical band are compared.
+ */
+public class MinHashSketches {
+
+    private static final int FILE_VERSION = 1;
+    /**
+     * Value of the bin of sketch without any k-mer.
+     */
+    private static final int EMPTY = -1;
+
+    private final int k;
+    private final int sketchSize;
+    private final long fingerprint;
+    /**
+     * Sketch of molecule m is stored at positions m * sketchSize ... (m + 1) * sketchSize - 1. Values are unsigned.
+     */
+    private final int[] values;
+
+    private MinHashSketches(int k, int sketchSize, long fingerprint, int[] values) {
+        this.k = k;
+        this.sketchSize = sketchSize;
+        this.fingerprint = fingerprint;
+        this.values = values;
+    }
+
+    public int getK() { return k; }
+    public int getSketchSize() { return sketchSize; }
+    public int size() { return values.length / sketchSize; }
+
+    /**
+     * Computes sketches of all molecules on a pool of threads.
+     * @param molecules Molecules in question.
+     * @param k Length of the k-mers (1 - KmerIndex.MAX_K).
+     * @param sketchSize Number of values in one sketch.
+     * @return Computed sketches.
+     * @throws IllegalArgumentException Sketches of all molecules would be too big for one array.
+     */
+    public static MinHashSketches build(List<FastaData> molecules, int k, int sketchSize) {
+        long values = (long) molecules.size() * sketchSize;
+        if (values > Integer.MAX_VALUE - 8) {throw new IllegalArgumentException("Too many molecules for sketches of this size.");}
+        MinHashSketches sketches = new MinHashSketches(k, sketchSize, FastaData.fingerprint(molecules), new int[(int) values]);
+        int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), molecules.size()));
+        AtomicInteger nextMolecule = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int m = nextMolecule.getAndIncrement(); m < molecules.size(); m = nextMolecule.getAndIncrement()) {
+                        sketches.sketch(molecules.get(m).getResidues(), m);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        return sketches;
+    }
+
+    /**
+     * Computes sketch of one sequence.
+     * @param residues Residues of the sequence.
+     * @param molecule Number of the molecule.
+     */
+    private void sketch(byte[] residues, int molecule) {
+        int start = molecule * sketchSize;
+        Arrays.fill(values, start, start + sketchSize, EMPTY);
+        boolean[] filled = new boolean[sketchSize];
+        long mask = (1L << (5 * k)) - 1;
+        long kmer = 0;
+        int valid = 0;
+        for (byte residue : residues) {
+            int code = PackedSequence.residueCode(residue);
+            //Residues which are not in one-letter code are not part of any k-mer
+            if (code == -1) {
+                valid = 0;
+                continue;
+            }
+            kmer = ((kmer << 5) | code) & mask;
+            if (++valid < k) {continue;}
+
+            long hash = mix(kmer);
+            int bin = (int) (((hash >>> 32) * sketchSize) >>> 32);
+            int value = (int) hash;
+            if (!filled[bin] || Integer.compareUnsigned(value, values[start + bin]) < 0) {
+                values[start + bin] = value;
+                filled[bin] = true;
+            }
+        }
+
+        //Densification - empty bin takes value of the next non-empty bin changed by the distance, so bins stay independent
+        int first = -1;
+        for (int bin = 0; bin < sketchSize && first == -1; bin++) {
+            if (filled[bin]) {first = bin;}
+        }
+        if (first == -1) {return;}
+        int source = first;
+        for (int i = sketchSize - 1; i >= 0; i--) {
+            int bin = (first + i) % sketchSize;
+            if (filled[bin]) {
+                source = bin;
+            } else {
+                int distance = Math.floorMod(source - bin, sketchSize);
+                values[start + bin] = (int) mix(((long) values[start + source] << 32) | distance);
+            }
+        }
+    }
+
+    /**
+     * Mixes bits of the value (murmur3 finalizer).
+     * @param value Value in question.
+     * @return 64-bit hash.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Estimates Jaccard similarity of k-mer sets of two molecules.
+     * @param first Number of the first molecule.
+     * @param second Number of the second molecule.
+     * @return Fraction of the same values in the sketches, 0 if some molecule has no k-mers.
+     */
+    public double similarity(int first, int second) {
+        if (isEmpty(first) || isEmpty(second)) {return 0;}
+        int same = 0;
+        for (int i = 0; i < sketchSize; i++) {
+            if (values[first * sketchSize + i] == values[second * sketchSize + i]) {same++;}
+        }
+        return (double) same / sketchSize;
+    }
+
+    private boolean isEmpty(int molecule) {
+        for (int i = 0; i < sketchSize; i++) {
+            if (values[molecule * sketchSize + i] != EMPTY) {return false;}
+        }
+        return true;
+    }
+
+    /**
+     * Chooses number of bands for LSH, so the similarity is close to the threshold of LSH (1 / bands) ^ (1 / rows).
+     * @param threshold Searched similarity.
+     * @return Number of bands, divisor of sketchSize.
+     */
+    public int bandsFor(double threshold) {
+        int bestBands = 1;
+        double bestError = Double.MAX_VALUE;
+        for (int bands = 1; bands <= sketchSize; bands++) {
+            if (sketchSize % bands != 0) {continue;}
+            double error = Math.abs(Math.pow(1.0 / bands, (double) bands / sketchSize) - threshold);
+            if (error < bestError) {
+                bestError = error;
+                bestBands = bands;
+            }
+        }
+        return bestBands;
+    }
+
+    /**
+     * Finds pairs of molecules with estimated similarity at least the threshold. Only pairs sharing a band are compared, so pairs
+     * with the similarity close to the threshold can be missed.
+     * @param threshold Minimal estimated similarity.
+     * @param bands Number of bands, divisor of sketchSize.
+     * @return Pairs as (first molecule shifted by 32 bits | second molecule), the first molecule is smaller. Sorted.
+     */
+    public long[] similarPairs(double threshold, int bands) {
+        int rows = sketchSize / bands;
+        LongList candidates = new LongList();
+        //Molecules without k-mers are not compared
+        IntList nonEmpty = new IntList();
+        for (int m = 0; m < size(); m++) {
+            if (!isEmpty(m)) {nonEmpty.add(m);}
+        }
+        long[] keyed = new long[nonEmpty.size()];
+        for (int band = 0; band < bands; band++) {
+            //Upper 32 bits of the hash of the band and number of the molecule, after sorting molecules with the same band are together
+            for (int j = 0; j < keyed.length; j++) {
+                int m = nonEmpty.get(j);
+                long hash = band;
+                for (int i = band * rows; i < (band + 1) * rows; i++) {
+                    hash = mix(hash * 31 + values[m * sketchSize + i]);
+                }
+                keyed[j] = (hash & 0xFFFFFFFF00000000L) | m;
+            }
+            Arrays.sort(keyed);
+
+            for (int runStart = 0; runStart < keyed.length; ) {
+                int runEnd = runStart + 1;
+                while (runEnd < keyed.length && (keyed[runEnd] >>> 32) == (keyed[runStart] >>> 32)) {runEnd++;}
+                for (int a = runStart; a < runEnd; a++) {
+                    for (int b = a + 1; b < runEnd; b++) {
+                        //Molecules are sorted in the run, so the first one is smaller
+                        candidates.add((keyed[a] << 32) | (keyed[b] & 0xFFFFFFFFL));
+                    }
+                }
+                runStart = runEnd;
+            }
+        }
+
+        long[] sorted = candidates.toArray();
+        Arrays.sort(sorted);
+        LongList pairs = new LongList();
+        for (int i = 0; i < sorted.length; i++) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {continue;}
+            if (similarity((int) (sorted[i] >>> 32), (int) sorted[i]) >= threshold) {pairs.add(sorted[i]);}
+        }
+        return pairs.toArray();
+    }
+
+    public boolean isSketchOf(List<FastaData> molecules) { return fingerprint == FastaData.fingerprint(molecules); }
+
+    /**
+     * Saves the sketches into the file.
+     * @param fileName Path to the file.
+     * @throws IOException Writing into the file.
+     */
+    public void save(String fileName) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(fileName)), 1 << 16))) {
+            output.writeInt(FILE_VERSION);
+            output.writeInt(k);
+            output.writeInt(sketchSize);
+            output.writeLong(fingerprint);
+            output.writeInt(values.length);
+            for (int value : values) {
+                output.writeInt(value);
+            }
+        }
+    }
+
+    /**
+     * Loads the sketches from the file.
+     * @param fileName Path to the file.
+     * @return Loaded sketches or null if the file does not contain sketches of the current version.
+     * @throws IOException Reading of the file.
+     */
+    public static MinHashSketches load(String fileName) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(fileName)), 1 << 16))) {
+            if (input.readInt() != FILE_VERSION) {return null;}
+            int k = input.readInt();
+            int sketchSize = input.readInt();
+            long fingerprint = input.readLong();
+            int[] values = new int[input.readInt()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = input.readInt();
+            }
+            return new MinHashSketches(k, sketchSize, fingerprint, values);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * Numbers of mismatches of a shorter sequence placed at every offset along a longer sequence (Hamming distance for every shift).
+ * Matches of every residue in the shorter sequence are counted by cross-correlation of the indicator sequences of the residue,
+ * which is computed by FFT in blocks of the longer sequence (overlap-save). Correlations of all residues are summed before the
+ * inverse FFT, so every block needs one FFT for each residue and one inverse FFT.
+ */
+public class MismatchProfile {
+
+    /**
+     * Shorter sequences are compared directly, FFT would be slower.
+     */
+    private static final int DIRECT_LIMIT = 32;
+    private static final int MIN_BLOCK = 1 << 10;
+
+    /**
+     * Number of mismatches for every offset (0-based) of the shorter sequence.
+     */
+    private final int[] mismatches;
+
+    private MismatchProfile(int[] mismatches) { this.mismatches = mismatches; }
+
+    public int[] getMismatches() { return mismatches; }
+
+    /**
+     * Gets the smallest number of mismatches.
+     * @return Minimal Hamming distance over all offsets.
+     */
+    public int getMinimum() {
+        int minimum = Integer.MAX_VALUE;
+        for (int value : mismatches) {
+            minimum = Math.min(minimum, value);
+        }
+        return minimum;
+    }
+
+    /**
+     * Gets all offsets with the smallest number of mismatches.
+     * @return Offsets (0-based) in increasing order.
+     */
+    public IntList getBestOffsets() {
+        int minimum = getMinimum();
+        IntList offsets = new IntList();
+        for (int i = 0; i < mismatches.length; i++) {
+            if (mismatches[i] == minimum) {offsets.add(i);}
+        }
+        return offsets;
+    }
+
+    /**
+     * Computes the profile.
+     * @param longer Residues of the longer sequence.
+     * @param shorter Residues of the shorter sequence, not longer than the first sequence.
+     * @return Mismatch profile with longer.length - shorter.length + 1 offsets.
+     * @throws IllegalArgumentException Second sequence is longer than the first one.
+     */
+    public static MismatchProfile compute(byte[] longer, byte[] shorter) {
+        if (shorter.length > longer.length) {throw new IllegalArgumentException("Second sequence is longer than the first one.");}
+        int[] mismatches = new int[longer.length - shorter.length + 1];
+        if (shorter.length <= DIRECT_LIMIT) {
+            for (int offset = 0; offset < mismatches.length; offset++) {
+                mismatches[offset] = HammingKernel.distance(longer, offset, shorter, 0, shorter.length, Integer.MAX_VALUE);
+            }
+            return new MismatchProfile(mismatches);
+        }
+
+        //Residues of the shorter sequence, other residues cannot match
+        boolean[] present = new boolean[256];
+        for (byte residue : shorter) {
+            present[residue & 0xFF] = true;
+        }
+
+        int size = MIN_BLOCK;
+        while (size < 2 * shorter.length) {size <<= 1;}
+        while (size / 2 >= longer.length && size / 2 >= shorter.length) {size >>= 1;}
+        Fft fft = new Fft(size);
+        double[] real = new double[size];
+        double[] imaginary = new double[size];
+        double[] sumReal = new double[size];
+        double[] sumImaginary = new double[size];
+
+        //Every block gives correlations for size - shorter.length + 1 offsets
+        int step = size - shorter.length + 1;
+        for (int blockStart = 0; blockStart < mismatches.length; blockStart += step) {
+            Arrays.fill(sumReal, 0);
+            Arrays.fill(sumImaginary, 0);
+            for (int residue = 0; residue < 256; residue++) {
+                if (!present[residue]) {continue;}
+
+                //Indicator of the residue in the block as real part, in the shorter sequence as imaginary part
+                for (int i = 0; i < size; i++) {
+                    int position = blockStart + i;
+                    real[i] = position < longer.length && (longer[position] & 0xFF) == residue ? 1 : 0;
+                    imaginary[i] = i < shorter.length && (shorter[i] & 0xFF) == residue ? 1 : 0;
+                }
+                fft.transform(real, imaginary, false);
+
+                //Both transforms are separated by symmetry, product of the first one and conjugate of the second one is added
+                for (int k = 0; k < size; k++) {
+                    int mirror = (size - k) & (size - 1);
+                    double blockReal = (real[k] + real[mirror]) / 2;
+                    double blockImaginary = (imaginary[k] - imaginary[mirror]) / 2;
+                    double shorterReal = (imaginary[k] + imaginary[mirror]) / 2;
+                    double shorterImaginary = (real[mirror] - real[k]) / 2;
+                    sumReal[k] += blockReal * shorterReal + blockImaginary * shorterImaginary;
+                    sumImaginary[k] += blockImaginary * shorterReal - blockReal * shorterImaginary;
+                }
+            }
+
+            fft.transform(sumReal, sumImaginary, true);
+            for (int offset = 0; offset < step && blockStart + offset < mismatches.length; offset++) {
+                mismatches[blockStart + offset] = shorter.length - (int) Math.round(sumReal[offset] / size);
+            }
+        }
+        return new MismatchProfile(mismatches);
+    }
+
+    /**
+     * Iterative radix-2 FFT of one size with precomputed roots of unity.
+     */
+    private static class Fft {
+        private final int size;
+        private final double[] cos;
+        private final double[] sin;
+        private final int[] reversed;
+
+        Fft(int size) {
+            this.size = size;
+            this.cos = new double[size / 2];
+            this.sin = new double[size / 2];
+            for (int i = 0; i < size / 2; i++) {
+                cos[i] = Math.cos(2 * Math.PI * i / size);
+                sin[i] = Math.sin(2 * Math.PI * i / size);
+            }
+            this.reversed = new int[size];
+            int bits = Integer.numberOfTrailingZeros(size);
+            for (int i = 0; i < size; i++) {
+                reversed[i] = Integer.reverse(i) >>> (32 - bits);
+            }
+        }
+
+        /**
+         * Transforms the complex sequence in place. Inverse transform is not divided by the size.
+         * @param real Real parts.
+         * @param imaginary Imaginary parts.
+         * @param inverse True for the inverse transform.
+         */
+        void transform(double[] real, double[] imaginary, boolean inverse) {
+            for (int i = 0; i < size; i++) {
+                int j = reversed[i];
+                if (i < j) {
+                    double swap = real[i];
+                    real[i] = real[j];
+                    real[j] = swap;
+                    swap = imaginary[i];
+                    imaginary[i] = imaginary[j];
+                    imaginary[j] = swap;
+                }
+            }
+            double sign = inverse ? 1 : -1;
+            for (int length = 2; length <= size; length <<= 1) {
+                int half = length / 2;
+                int stride = size / length;
+                for (int start = 0; start < size; start += length) {
+                    for (int k = 0; k < half; k++) {
+                        double wr = cos[k * stride];
+                        double wi = sign * sin[k * stride];
+                        int a = start + k;
+                        int b = a + half;
+                        double tr = real[b] * wr - imaginary[b] * wi;
+                        double ti = real[b] * wi + imaginary[b] * wr;
+                        real[b] = real[a] - tr;
+                        imaginary[b] = imaginary[a] - ti;
+                        real[a] += tr;
+                        imaginary[a] += ti;
+                    }
+                }
+            }
+        }
+    }
+}
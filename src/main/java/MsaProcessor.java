@@ -243,21 +243,10 @@ public class MsaProcessor {
 
         char[] header = null;
         int[][] scoringMatrix = null;
-        try (BufferedReader reader = new BufferedReader(new FileReader("InputFiles/ScoringMatrices/" + sMatrixName + ".txt"))) {
-            String line;
-            line = reader.readLine();
-            line = line.replaceAll(" ", "");
-            header = line.toCharArray();
-            int index = 0;
-            scoringMatrix = new int[20][20];
-            //Parsing from file. Always should have structure for this.
-            while ((line = reader.readLine()) != null) {
-                String[] ar = line.split(" +");
-                for (int i = 1; i < ar.length; i++) {
-                    scoringMatrix[index][i - 1] = Integer.parseInt(ar[i]);
-                }
-                index++;
-            }
+        try {
+            ScoringMatrix matrix = ScoringMatrix.load(sMatrixName);
+            header = matrix.getHeader();
+            scoringMatrix = matrix.getScores();
         }
         catch (IOException e) {
             System.out.println();
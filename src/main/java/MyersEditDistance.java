@@ -0,0 +1,231 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Edit distance computed by Myers' bit-vector algorithm. Column of the matrix of dynamic programming is stored as bit-vectors of
+ * vertical differences (+1 and -1) along the pattern, split into 64-bit blocks, so one residue of the text needs O(m / 64) word
+ * operations. Matches of the residue with the pattern are read from precomputed masks.
+ * Long distances are computed in parallel by wavefront: blocks of the pattern are grouped and the text is split into chunks, tile
+ * of a group and a chunk can run when the tile above (giving horizontal differences of every column) and the tile to the left
+ * (giving vertical differences of the blocks) are finished.
+ * One instance computes distances of one pattern at a time and keeps its buffers, so it must not be used by more threads at once.
+ */
+public class MyersEditDistance {
+
+    /**
+     * Size of the tile of parallel computation - number of 64-bit blocks of the pattern and number of residues of the text.
+     */
+    private static final int GROUP_BLOCKS = 32;
+    private static final int CHUNK_LENGTH = 1 << 13;
+
+    private int patternLength;
+    private int blocks;
+    /**
+     * Match masks, blocks of the symbol s are at positions s * blocks ... (s + 1) * blocks - 1. Symbol 0 is a residue which is not
+     * in the pattern, its masks are empty.
+     */
+    private long[] masks = new long[0];
+    private final int[] asciiSymbols = new int[128];
+    private final Map<Character, Integer> otherSymbols = new HashMap<>();
+    /**
+     * Vertical differences +1 and -1 of the current column.
+     */
+    private long[] positive = new long[0];
+    private long[] negative = new long[0];
+
+    /**
+     * Precomputes match masks of the pattern.
+     * @param pattern Pattern, the shorter sequence should be used.
+     */
+    public MyersEditDistance(char[] pattern) { setPattern(pattern); }
+
+    /**
+     * Precomputes match masks of another pattern. Buffers of the previous pattern are reused if they are big enough, so one instance
+     * can compute distances of many pairs without allocation.
+     * @param pattern Pattern, the shorter sequence should be used.
+     */
+    public void setPattern(char[] pattern) {
+        patternLength = pattern.length;
+        blocks = Math.max(1, (pattern.length + 63) >>> 6);
+        if (positive.length < blocks) {
+            positive = new long[blocks];
+            negative = new long[blocks];
+        }
+        Arrays.fill(asciiSymbols, 0);
+        otherSymbols.clear();
+
+        //Numbering of the symbols of the pattern
+        int symbols = 1;
+        for (char symbol : pattern) {
+            if (symbolOf(symbol) == 0) {
+                if (symbol < 128) {
+                    asciiSymbols[symbol] = symbols++;
+                } else {
+                    otherSymbols.put(symbol, symbols++);
+                }
+            }
+        }
+        if (masks.length < symbols * blocks) {
+            masks = new long[symbols * blocks];
+        } else {
+            Arrays.fill(masks, 0, symbols * blocks, 0);
+        }
+        for (int i = 0; i < pattern.length; i++) {
+            masks[symbolOf(pattern[i]) * blocks + (i >>> 6)] |= 1L << i;
+        }
+    }
+
+    private int symbolOf(char symbol) {
+        if (symbol < 128) {return asciiSymbols[symbol];}
+        return otherSymbols.getOrDefault(symbol, 0);
+    }
+
+    /**
+     * Calculates edit distance of two sequences, the shorter one is used as the pattern. Long sequences are computed in parallel.
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     * @return Edit distance of the sequences.
+     */
+    public static int distance(char[] firstSeq, char[] secondSeq) {
+        boolean firstShorter = firstSeq.length <= secondSeq.length;
+        return new MyersEditDistance(firstShorter ? firstSeq : secondSeq).distanceInParallel(firstShorter ? secondSeq : firstSeq);
+    }
+
+    /**
+     * Calculates edit distance of the pattern and the text.
+     * @param text Text, any length.
+     * @return Edit distance.
+     */
+    public int distance(char[] text) {
+        if (patternLength == 0) {return text.length;}
+        resetColumn();
+        int score = patternLength;
+        for (char symbol : text) {
+            //Horizontal difference entering the first block from above, the first row increases by 1
+            score += advance(0, blocks, symbolOf(symbol) * blocks, 1);
+        }
+        return score;
+    }
+
+    /**
+     * Calculates edit distance of the pattern and the text by tiles running on the ForkJoin pool. Short patterns or texts are
+     * computed by one thread.
+     * @param text Text, any length.
+     * @return Edit distance.
+     */
+    public int distanceInParallel(char[] text) {
+        int groups = (blocks + GROUP_BLOCKS - 1) / GROUP_BLOCKS;
+        int chunks = (text.length + CHUNK_LENGTH - 1) / CHUNK_LENGTH;
+        if (patternLength == 0 || groups < 2 || chunks < 2 || Runtime.getRuntime().availableProcessors() < 2) {return distance(text);}
+        resetColumn();
+
+        //Horizontal differences of every column below the last finished group, the first row increases by 1
+        byte[] carries = new byte[text.length];
+        Arrays.fill(carries, (byte) 1);
+        //Number of unfinished tiles above and to the left
+        AtomicIntegerArray waiting = new AtomicIntegerArray(groups * chunks);
+        for (int g = 0; g < groups; g++) {
+            for (int c = 0; c < chunks; c++) {
+                waiting.set(g * chunks + c, (g > 0 ? 1 : 0) + (c > 0 ? 1 : 0));
+            }
+        }
+        new TileTask(null, text, carries, waiting, groups, chunks, 0, 0).invoke();
+
+        int score = patternLength;
+        for (byte carry : carries) {
+            score += carry;
+        }
+        return score;
+    }
+
+    /**
+     * Sets the column before the first residue of the text - every residue of the pattern adds 1.
+     */
+    private void resetColumn() {
+        Arrays.fill(positive, 0, blocks, -1L);
+        Arrays.fill(negative, 0, blocks, 0);
+    }
+
+    /**
+     * Moves blocks of the column to the next residue of the text.
+     * @param blockFrom First block.
+     * @param blockTo Block after the last one.
+     * @param maskStart Position of the match masks of the residue.
+     * @param carry Horizontal difference entering the first block from above (-1, 0 or 1).
+     * @return Horizontal difference leaving the last block, for the last block of the pattern at its last residue.
+     */
+    private int advance(int blockFrom, int blockTo, int maskStart, int carry) {
+        for (int b = blockFrom; b < blockTo; b++) {
+            long pv = positive[b];
+            long mv = negative[b];
+            long eq = masks[maskStart + b];
+            long carryPositive = carry > 0 ? 1L : 0L;
+            long carryNegative = carry < 0 ? 1L : 0L;
+
+            long xv = eq | mv;
+            eq |= carryNegative;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+
+            int bit = b == blocks - 1 ? (patternLength - 1) & 63 : 63;
+            carry = (int) ((ph >>> bit) & 1) - (int) ((mh >>> bit) & 1);
+
+            ph = (ph << 1) | carryPositive;
+            mh = (mh << 1) | carryNegative;
+            positive[b] = mh | ~(xv | ph);
+            negative[b] = ph & xv;
+        }
+        return carry;
+    }
+
+    /**
+     * Tile of one group of blocks and one chunk of the text. Finished tile starts its right and lower neighbours if they do not
+     * wait for another tile.
+     */
+    private class TileTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final char[] text;
+        private final byte[] carries;
+        private final AtomicIntegerArray waiting;
+        private final int groups;
+        private final int chunks;
+        private final int group;
+        private final int chunk;
+
+        TileTask(TileTask parent, char[] text, byte[] carries, AtomicIntegerArray waiting, int groups, int chunks, int group, int chunk) {
+            super(parent);
+            this.text = text;
+            this.carries = carries;
+            this.waiting = waiting;
+            this.groups = groups;
+            this.chunks = chunks;
+            this.group = group;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void compute() {
+            int blockFrom = group * GROUP_BLOCKS;
+            int blockTo = Math.min(blocks, blockFrom + GROUP_BLOCKS);
+            int end = Math.min(text.length, (chunk + 1) * CHUNK_LENGTH);
+            for (int i = chunk * CHUNK_LENGTH; i < end; i++) {
+                carries[i] = (byte) advance(blockFrom, blockTo, symbolOf(text[i]) * blocks, carries[i]);
+            }
+
+            if (chunk + 1 < chunks && waiting.decrementAndGet(group * chunks + chunk + 1) == 0) {
+                addToPendingCount(1);
+                new TileTask(this, text, carries, waiting, groups, chunks, group, chunk + 1).fork();
+            }
+            if (group + 1 < groups && waiting.decrementAndGet((group + 1) * chunks + chunk) == 0) {
+                addToPendingCount(1);
+                new TileTask(this, text, carries, waiting, groups, chunks, group + 1, chunk).fork();
+            }
+            tryComplete();
+        }
+    }
+}
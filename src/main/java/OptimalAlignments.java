@@ -0,0 +1,215 @@
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * All optimal alignments given by the matrix of edit distance. Alignments are paths from the lower right corner of the matrix to the
+ * upper left corner, going only through the steps which keep the distance optimal. Their number is counted without enumerating them,
+ * iterator enumerates them one by one with an explicit stack (in the same order as backtracking) and random alignments are sampled
+ * uniformly.
+ */
+public class OptimalAlignments implements Iterable<StringBuilder[]> {
+
+    private final char[] firstSeq;
+    private final char[] secondSeq;
+    private final int[][] matrix;
+    /**
+     * Logarithm of the number of optimal paths from the upper left corner to every cell, computed for the first random alignment.
+     */
+    private double[][] logCounts = null;
+
+    /**
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     * @param matrix Matrix of edit distance of the sequences, (firstSeq.length + 1) x (secondSeq.length + 1).
+     */
+    public OptimalAlignments(char[] firstSeq, char[] secondSeq, int[][] matrix) {
+        this.firstSeq = firstSeq;
+        this.secondSeq = secondSeq;
+        this.matrix = matrix;
+    }
+
+    public int getDistance() { return matrix[firstSeq.length][secondSeq.length]; }
+
+    private boolean leftStep(int i, int j) { return j > 0 && (i == 0 || matrix[i][j] == matrix[i][j - 1] + 1); }
+
+    private boolean diagonalStep(int i, int j) {
+        return i > 0 && j > 0 && matrix[i][j] == matrix[i - 1][j - 1] + (firstSeq[i - 1] == secondSeq[j - 1] ? 0 : 1);
+    }
+
+    private boolean upStep(int i, int j) { return i > 0 && (j == 0 || matrix[i][j] == matrix[i - 1][j] + 1); }
+
+    /**
+     * Counts optimal alignments exactly. Only two rows of the counts are stored.
+     * @return Number of optimal alignments.
+     */
+    public BigInteger count() {
+        BigInteger[] previous = new BigInteger[secondSeq.length + 1];
+        BigInteger[] current = new BigInteger[secondSeq.length + 1];
+        for (int i = 0; i <= firstSeq.length; i++) {
+            for (int j = 0; j <= secondSeq.length; j++) {
+                if (i == 0 && j == 0) {
+                    current[j] = BigInteger.ONE;
+                    continue;
+                }
+                BigInteger paths = BigInteger.ZERO;
+                if (leftStep(i, j)) {paths = paths.add(current[j - 1]);}
+                if (diagonalStep(i, j)) {paths = paths.add(previous[j - 1]);}
+                if (upStep(i, j)) {paths = paths.add(previous[j]);}
+                current[j] = paths;
+            }
+            BigInteger[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[secondSeq.length];
+    }
+
+    /**
+     * Iterator of all optimal alignments. Returned aligned sequences are written from the end and they are changed by the next call
+     * of the iterator, so they have to be used (or copied) before it.
+     * @return Iterator of pairs aligned first sequence, aligned second sequence.
+     */
+    @Override
+    public Iterator<StringBuilder[]> iterator() { return new AlignmentIterator(); }
+
+    /**
+     * Depth first search of the paths with the stack of cells. Every cell on the stack remembers the next step which should be tried.
+     */
+    private class AlignmentIterator implements Iterator<StringBuilder[]> {
+        private static final int LEFT = 0;
+        private static final int DIAGONAL = 1;
+        private static final int UP = 2;
+        private static final int DONE = 3;
+
+        private final int[] rows = new int[firstSeq.length + secondSeq.length + 1];
+        private final int[] columns = new int[firstSeq.length + secondSeq.length + 1];
+        private final int[] nextSteps = new int[firstSeq.length + secondSeq.length + 1];
+        private int depth = 0;
+        private final StringBuilder alignedFirstSeq = new StringBuilder();
+        private final StringBuilder alignedSecondSeq = new StringBuilder();
+        /**
+         * True if the stack contains complete alignment which was not returned yet.
+         */
+        private boolean found = false;
+
+        AlignmentIterator() { push(firstSeq.length, secondSeq.length); }
+
+        private void push(int i, int j) {
+            rows[depth] = i;
+            columns[depth] = j;
+            nextSteps[depth] = LEFT;
+            depth++;
+        }
+
+        /**
+         * Continues the search until the upper left corner is reached or every path is explored.
+         * @return True if the next alignment was found.
+         */
+        private boolean findNext() {
+            while (depth > 0) {
+                int top = depth - 1;
+                int i = rows[top];
+                int j = columns[top];
+
+                //Upper left corner - alignment is complete
+                if (i == 0 && j == 0 && nextSteps[top] == LEFT) {
+                    nextSteps[top] = DONE;
+                    return true;
+                }
+                //Every step from this cell was tried
+                if (nextSteps[top] == DONE) {
+                    depth--;
+                    if (depth > 0) {
+                        alignedFirstSeq.setLength(alignedFirstSeq.length() - 1);
+                        alignedSecondSeq.setLength(alignedSecondSeq.length() - 1);
+                    }
+                    continue;
+                }
+
+                int step = nextSteps[top]++;
+                if (step == LEFT && leftStep(i, j)) {
+                    alignedFirstSeq.append('-');
+                    alignedSecondSeq.append(secondSeq[j - 1]);
+                    push(i, j - 1);
+                } else if (step == DIAGONAL && diagonalStep(i, j)) {
+                    alignedFirstSeq.append(firstSeq[i - 1]);
+                    alignedSecondSeq.append(secondSeq[j - 1]);
+                    push(i - 1, j - 1);
+                } else if (step == UP && upStep(i, j)) {
+                    alignedFirstSeq.append(firstSeq[i - 1]);
+                    alignedSecondSeq.append('-');
+                    push(i - 1, j);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!found) {found = findNext();}
+            return found;
+        }
+
+        @Override
+        public StringBuilder[] next() {
+            if (!hasNext()) {throw new NoSuchElementException();}
+            found = false;
+            return new StringBuilder[] {alignedFirstSeq, alignedSecondSeq};
+        }
+    }
+
+    /**
+     * Chooses one optimal alignment, every optimal alignment has the same probability. Path goes from the lower right corner and every
+     * step is chosen with probability proportional to the number of optimal paths leading to the previous cell.
+     * @param random Source of random numbers.
+     * @return Aligned first sequence and aligned second sequence, both written from the end.
+     */
+    public StringBuilder[] randomAlignment(Random random) {
+        if (logCounts == null) {computeLogCounts();}
+        StringBuilder alignedFirstSeq = new StringBuilder();
+        StringBuilder alignedSecondSeq = new StringBuilder();
+        int i = firstSeq.length;
+        int j = secondSeq.length;
+        while (i > 0 || j > 0) {
+            double left = leftStep(i, j) ? Math.exp(logCounts[i][j - 1] - logCounts[i][j]) : 0;
+            double diagonal = diagonalStep(i, j) ? Math.exp(logCounts[i - 1][j - 1] - logCounts[i][j]) : 0;
+            double up = upStep(i, j) ? Math.exp(logCounts[i - 1][j] - logCounts[i][j]) : 0;
+            double choice = random.nextDouble() * (left + diagonal + up);
+
+            if (left > 0 && (choice < left || diagonal + up == 0)) {
+                alignedFirstSeq.append('-');
+                alignedSecondSeq.append(secondSeq[j - 1]);
+                j--;
+            } else if (diagonal > 0 && (choice < left + diagonal || up == 0)) {
+                alignedFirstSeq.append(firstSeq[i - 1]);
+                alignedSecondSeq.append(secondSeq[j - 1]);
+                i--;
+                j--;
+            } else {
+                alignedFirstSeq.append(firstSeq[i - 1]);
+                alignedSecondSeq.append('-');
+                i--;
+            }
+        }
+        return new StringBuilder[] {alignedFirstSeq, alignedSecondSeq};
+    }
+
+    /**
+     * Computes logarithms of the numbers of optimal paths, the numbers themselves can be too big for double.
+     */
+    private void computeLogCounts() {
+        logCounts = new double[firstSeq.length + 1][secondSeq.length + 1];
+        for (int i = 0; i <= firstSeq.length; i++) {
+            for (int j = 0; j <= secondSeq.length; j++) {
+                if (i == 0 && j == 0) {continue;}
+                double left = leftStep(i, j) ? logCounts[i][j - 1] : Double.NEGATIVE_INFINITY;
+                double diagonal = diagonalStep(i, j) ? logCounts[i - 1][j - 1] : Double.NEGATIVE_INFINITY;
+                double up = upStep(i, j) ? logCounts[i - 1][j] : Double.NEGATIVE_INFINITY;
+                double maximum = Math.max(left, Math.max(diagonal, up));
+                logCounts[i][j] = maximum + Math.log(Math.exp(left - maximum) + Math.exp(diagonal - maximum) + Math.exp(up - maximum));
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sequence of residues packed into an array of longs. Nucleotide sequences (only A, C, G and T) use 2 bits per residue,
+ * sequences in upper case one-letter code use 5 bits per residue and other sequences use 8 bits per residue.
+ */
+public class PackedSequence {
+
+    private static final byte[] NUCLEOTIDES = "ACGT".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] RESIDUES = "ABCDEFGHIJKLMNOPQRSTUVWXYZ*-".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] BYTES = new byte[256];
+
+    /**
+     * Flags of the alphabets in which the byte can be written. 0 - nucleotide, 1 - one-letter code, 2 - other.
+     */
+    private static final byte[] ALPHABET_FLAGS = new byte[256];
+    private static final byte[] NUCLEOTIDE_CODES = new byte[256];
+    private static final byte[] RESIDUE_CODES = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            BYTES[i] = (byte) i;
+            ALPHABET_FLAGS[i] = 2;
+        }
+        for (int i = 0; i < RESIDUES.length; i++) {
+            ALPHABET_FLAGS[RESIDUES[i]] = 1;
+            RESIDUE_CODES[RESIDUES[i]] = (byte) i;
+        }
+        for (int i = 0; i < NUCLEOTIDES.length; i++) {
+            ALPHABET_FLAGS[NUCLEOTIDES[i]] = 0;
+            NUCLEOTIDE_CODES[NUCLEOTIDES[i]] = (byte) i;
+        }
+    }
+
+    private final long[] words;
+    private final int length;
+    private final int bitsPerResidue;
+    private final int residuesPerWord;
+    private final byte[] symbols;
+
+    private PackedSequence(long[] words, int length, int bitsPerResidue) {
+        this.words = words;
+        this.length = length;
+        this.bitsPerResidue = bitsPerResidue;
+        this.residuesPerWord = 64 / bitsPerResidue;
+        switch (bitsPerResidue) {
+            case 2:
+                symbols = NUCLEOTIDES;
+                break;
+            case 5:
+                symbols = RESIDUES;
+                break;
+            default:
+                symbols = BYTES;
+                break;
+        }
+    }
+
+    /**
+     * Gets the flag of the smallest alphabet containing the residue. Flags of all residues of the sequence are joined by bitwise or.
+     * @param residue One-letter code of the residue.
+     * @return Flag of the alphabet.
+     */
+    public static int alphabetFlag(byte residue) { return ALPHABET_FLAGS[residue & 0xFF]; }
+
+    /**
+     * Gets the 5-bit code of the residue written in upper case one-letter code.
+     * @param residue One-letter code of the residue.
+     * @return Code (0 - 27) or -1 if residue is not in upper case one-letter code.
+     */
+    public static int residueCode(byte residue) {
+        return ALPHABET_FLAGS[residue & 0xFF] > 1 ? -1 : RESIDUE_CODES[residue & 0xFF];
+    }
+
+    /**
+     * Gets the 2-bit code of the nucleotide.
+     * @param residue One-letter code of the nucleotide.
+     * @return Code (0 - 3) or -1 if residue is not A, C, G or T.
+     */
+    public static int nucleotideCode(byte residue) {
+        return ALPHABET_FLAGS[residue & 0xFF] > 0 ? -1 : NUCLEOTIDE_CODES[residue & 0xFF];
+    }
+
+    /**
+     * Packs the sequence.
+     * @param residues Array with the residues.
+     * @param length Number of residues used from the array.
+     * @param alphabetFlags Bitwise or of alphabet flags of all residues.
+     * @return Packed sequence.
+     */
+    public static PackedSequence encode(byte[] residues, int length, int alphabetFlags) {
+        int bits = alphabetFlags == 0 ? 2 : (alphabetFlags == 1 ? 5 : 8);
+        byte[] codes = bits == 2 ? NUCLEOTIDE_CODES : (bits == 5 ? RESIDUE_CODES : BYTES);
+        int perWord = 64 / bits;
+        long[] words = new long[(length + perWord - 1) / perWord];
+
+        int position = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = 0;
+            int end = Math.min(length, position + perWord);
+            for (int shift = 0; position < end; position++, shift += bits) {
+                word |= (long) (codes[residues[position] & 0xFF] & 0xFF) << shift;
+            }
+            words[w] = word;
+        }
+        return new PackedSequence(words, length, bits);
+    }
+
+    /**
+     * Packs the sequence stored in a string.
+     * @param sequence Sequence of the molecule.
+     * @return Packed sequence.
+     */
+    public static PackedSequence encode(String sequence) {
+        byte[] residues = sequence.getBytes(StandardCharsets.ISO_8859_1);
+        int alphabetFlags = 0;
+        for (byte residue : residues) {
+            alphabetFlags |= alphabetFlag(residue);
+        }
+        return encode(residues, residues.length, alphabetFlags);
+    }
+
+    /**
+     * Creates the sequence from already packed words, e.g. from a saved snapshot.
+     * @param words Packed residues.
+     * @param length Number of residues.
+     * @param bitsPerResidue Number of bits per residue (2, 5 or 8).
+     * @return Packed sequence.
+     */
+    public static PackedSequence fromWords(long[] words, int length, int bitsPerResidue) {
+        return new PackedSequence(words, length, bitsPerResidue);
+    }
+
+    public int length() { return length; }
+    public int getBitsPerResidue() { return bitsPerResidue; }
+    public long[] getWords() { return words; }
+
+    /**
+     * Estimates memory used by the sequence.
+     * @return Number of bytes.
+     */
+    public long memorySize() { return 8L * words.length + 48; }
+
+    /**
+     * Gets one-letter code of residue at certain position in the sequence.
+     * @param position Position of the residue (0-based).
+     * @return One-letter code of the residue.
+     */
+    public byte residueAt(int position) {
+        long word = words[position / residuesPerWord] >>> ((position % residuesPerWord) * bitsPerResidue);
+        return symbols[(int) (word & ((1L << bitsPerResidue) - 1))];
+    }
+
+    /**
+     * Unpacks part of the sequence into the array.
+     * @param from Start of the part (0-based, inclusive).
+     * @param to End of the part (0-based, exclusive).
+     * @param destination Array for the residues.
+     * @param offset Position in the array where the first residue is written.
+     */
+    public void copyTo(int from, int to, byte[] destination, int offset) {
+        if (from >= to) {return;}
+        long mask = (1L << bitsPerResidue) - 1;
+        int wordIndex = from / residuesPerWord;
+        int inWord = from % residuesPerWord;
+        long word = words[wordIndex] >>> (inWord * bitsPerResidue);
+        for (int i = from; i < to; i++) {
+            if (inWord == residuesPerWord) {
+                word = words[++wordIndex];
+                inWord = 0;
+            }
+            destination[offset++] = symbols[(int) (word & mask)];
+            word >>>= bitsPerResidue;
+            inWord++;
+        }
+    }
+
+    /**
+     * Unpacks the whole sequence.
+     * @return Array with one-letter codes of the residues.
+     */
+    public byte[] toBytes() {
+        byte[] residues = new byte[length];
+        copyTo(0, length, residues, 0);
+        return residues;
+    }
+
+    /**
+     * Unpacks part of the sequence.
+     * @param from Start of the subsequence (0-based, inclusive).
+     * @param to End of the subsequence (0-based, exclusive).
+     * @return Subsequence as a string.
+     */
+    public String substring(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new StringIndexOutOfBoundsException("begin " + from + ", end " + to + ", length " + length);
+        }
+        byte[] residues = new byte[to - from];
+        copyTo(from, to, residues, 0);
+        return new String(residues, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() { return substring(0, length); }
+}
@@ -0,0 +1,201 @@
+/**
+ * Edit distance alignment of many pairs of sequences by one thread. Distance d is computed by Myers' algorithm first, then one optimal
+ * alignment is traced back in the band of diagonals which can contain a path with the distance d, so only about n * (d + 1) cells
+ * are computed. Buffers are kept between the pairs and grow only for bigger pairs, so aligning a pair does not allocate the matrix.
+ * One instance must not be used by more threads at once.
+ */
+public class PairwiseAligner {
+
+    /**
+     * Pairs with bigger band are aligned by Hirschberg's algorithm, which needs only linear memory.
+     */
+    private static final long MAX_BAND_CELLS = 1L << 24;
+    private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+    private static final byte DIAGONAL = 0;
+    private static final byte GAP_IN_SECOND = 1;
+    private static final byte GAP_IN_FIRST = 2;
+
+    private final MyersEditDistance myers = new MyersEditDistance(new char[0]);
+    /**
+     * Directions of the cells of the band, row i of the matrix starts at the position i * (width of the band).
+     */
+    private byte[] directions = new byte[0];
+    private int[] previous = new int[0];
+    private int[] current = new int[0];
+
+    private int distance;
+    private int matches;
+    private int columns;
+    private final StringBuilder cigar = new StringBuilder();
+
+    public int getDistance() { return distance; }
+    /**
+     * @return Fraction of the columns of the alignment with the same residue in both sequences.
+     */
+    public double getIdentity() { return columns == 0 ? 1 : (double) matches / columns; }
+    /**
+     * @return Alignment in CIGAR format with the first sequence as the reference - '=' match, 'X' mismatch, 'D' residue of the first
+     * sequence aligned to a gap, 'I' residue of the second sequence aligned to a gap.
+     */
+    public String getCigar() { return cigar.toString(); }
+
+    /**
+     * Computes edit distance and one optimal alignment of the sequences. Results are available from the getters until the next call.
+     * @param firstSeq First sequence.
+     * @param secondSeq Second sequence.
+     */
+    public void align(char[] firstSeq, char[] secondSeq) {
+        boolean firstShorter = firstSeq.length <= secondSeq.length;
+        myers.setPattern(firstShorter ? firstSeq : secondSeq);
+        distance = myers.distance(firstShorter ? secondSeq : firstSeq);
+        matches = 0;
+        columns = 0;
+        cigar.setLength(0);
+
+        //Path with the distance d has at least |m - n| gaps, so it can go at most (d - |m - n|) / 2 diagonals further on both sides
+        int lengthDifference = secondSeq.length - firstSeq.length;
+        int extra = (distance - Math.abs(lengthDifference)) / 2;
+        int low = Math.min(0, lengthDifference) - extra;
+        int width = Math.abs(lengthDifference) + 2 * extra + 1;
+        if ((long) (firstSeq.length + 1) * width > MAX_BAND_CELLS) {
+            StringBuilder[] alignment = HirschbergAligner.align(firstSeq, secondSeq);
+            readAlignment(alignment[0], alignment[1]);
+            return;
+        }
+        fillBand(firstSeq, secondSeq, low, width);
+        traceBack(firstSeq, secondSeq, low, width);
+    }
+
+    /**
+     * Computes the band of the matrix and stores directions of the cells. Cell (i, j) is stored at the position j - i - low of the row i.
+     * @param low Lowest diagonal j - i of the band.
+     * @param width Number of diagonals of the band.
+     */
+    private void fillBand(char[] firstSeq, char[] secondSeq, int low, int width) {
+        int cells = (firstSeq.length + 1) * width;
+        if (directions.length < cells) {directions = new byte[cells];}
+        if (previous.length < width + 1) {
+            previous = new int[width + 1];
+            current = new int[width + 1];
+        }
+
+        //First row - gaps in the first sequence, cells outside the matrix are never chosen
+        for (int d = 0; d < width; d++) {
+            int j = low + d;
+            previous[d] = j >= 0 && j <= secondSeq.length ? j : INFINITY;
+            directions[d] = GAP_IN_FIRST;
+        }
+        previous[width] = INFINITY;
+        current[width] = INFINITY;
+
+        for (int i = 1; i <= firstSeq.length; i++) {
+            char symbol = firstSeq[i - 1];
+            int rowStart = i * width;
+            //Positions of the row with 0 <= j <= secondSeq.length
+            int from = Math.max(0, -i - low);
+            int to = Math.min(width - 1, secondSeq.length - i - low);
+            for (int d = 0; d < from; d++) {
+                current[d] = INFINITY;
+            }
+            for (int d = Math.max(from, to + 1); d < width; d++) {
+                current[d] = INFINITY;
+            }
+            int left = INFINITY;
+            int d = from;
+            //Cell in the first column
+            if (d <= to && i + low + d == 0) {
+                left = i;
+                current[d] = left;
+                directions[rowStart + d] = GAP_IN_SECOND;
+                d++;
+            }
+            for (; d <= to; d++) {
+                //Same diagonal in the previous row is at the same position, the cell above is one position to the right
+                int value = previous[d] + (symbol == secondSeq[i + low + d - 1] ? 0 : 1);
+                byte direction = DIAGONAL;
+                int up = previous[d + 1] + 1;
+                if (up < value) {
+                    value = up;
+                    direction = GAP_IN_SECOND;
+                }
+                if (left + 1 < value) {
+                    value = left + 1;
+                    direction = GAP_IN_FIRST;
+                }
+                left = value;
+                current[d] = value;
+                directions[rowStart + d] = direction;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    /**
+     * Follows the stored directions from the lower right corner and writes the operations into the CIGAR.
+     * @param low Lowest diagonal j - i of the band.
+     * @param width Number of diagonals of the band.
+     */
+    private void traceBack(char[] firstSeq, char[] secondSeq, int low, int width) {
+        //Operations are found from the end, so they are stored reversed first
+        StringBuilder operations = new StringBuilder(firstSeq.length + secondSeq.length);
+        int i = firstSeq.length;
+        int j = secondSeq.length;
+        while (i > 0 || j > 0) {
+            byte direction = directions[i * width + j - i - low];
+            if (direction == DIAGONAL) {
+                operations.append(firstSeq[i - 1] == secondSeq[j - 1] ? '=' : 'X');
+                i--;
+                j--;
+            } else if (direction == GAP_IN_SECOND) {
+                operations.append('D');
+                i--;
+            } else {
+                operations.append('I');
+                j--;
+            }
+        }
+        writeCigar(operations.reverse());
+    }
+
+    /**
+     * Reads operations of the alignment computed by Hirschberg's algorithm.
+     * @param alignedFirstSeq Aligned first sequence written from the end.
+     * @param alignedSecondSeq Aligned second sequence written from the end.
+     */
+    private void readAlignment(StringBuilder alignedFirstSeq, StringBuilder alignedSecondSeq) {
+        StringBuilder operations = new StringBuilder(alignedFirstSeq.length());
+        for (int c = alignedFirstSeq.length() - 1; c >= 0; c--) {
+            char first = alignedFirstSeq.charAt(c);
+            char second = alignedSecondSeq.charAt(c);
+            if (first == '-') {
+                operations.append('I');
+            } else if (second == '-') {
+                operations.append('D');
+            } else {
+                operations.append(first == second ? '=' : 'X');
+            }
+        }
+        writeCigar(operations);
+    }
+
+    /**
+     * Joins runs of the same operation and counts matches and columns.
+     * @param operations One operation for every column of the alignment.
+     */
+    private void writeCigar(CharSequence operations) {
+        columns = operations.length();
+        int run = 0;
+        for (int c = 0; c < columns; c++) {
+            char operation = operations.charAt(c);
+            if (operation == '=') {matches++;}
+            run++;
+            if (c + 1 == columns || operations.charAt(c + 1) != operation) {
+                cigar.append(run).append(operation);
+                run = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads fasta files on a pool of threads. Big files are split into parts at the beginnings of molecules and every part is parsed
+ * separately. Files compressed by gzip or BGZF are decompressed while parsing. Parsed files are saved as binary snapshots (see
+ * FastaSnapshot), which are loaded instead of parsing while the file does not change. Results are joined in the order of the
+ * files and parts, so loaded molecules are the same as from sequential loading.
+ */
+public class ParallelFastaLoader {
+
+    /**
+     * Files bigger than this are split into more parts.
+     */
+    private static final long PART_SIZE = 1L << 26;
+
+    /**
+     * Loads all files.
+     * @param fileNames Names of files in the InputFiles directory.
+     * @param storeSequences True if sequences should be stored, false if only their positions in the file (indexed mode).
+     * @return Molecules of every file in the order of the files. Null for files which could not be read.
+     */
+    public static List<List<FastaData>> loadFiles(String[] fileNames, boolean storeSequences) {
+        int threadCount = Runtime.getRuntime().availableProcessors();
+
+        //Splitting the files into parts
+        List<List<Callable<List<FastaData>>>> parts = new ArrayList<>();
+        boolean[] fromSnapshot = new boolean[fileNames.length];
+        int partCount = 0;
+        for (int f = 0; f < fileNames.length; f++) {
+            String fileName = fileNames[f];
+            List<Callable<List<FastaData>>> fileParts = new ArrayList<>();
+            try {
+                //Files with current snapshot are not parsed, compressed files are parsed as one part
+                if (storeSequences && FastaSnapshot.isCurrent(fileName)) {
+                    fileParts.add(() -> loadSnapshot(fileName));
+                    fromSnapshot[f] = true;
+                } else if (BgzfFile.isGzip(fileName)) {
+                    fileParts.add(() -> parseCompressed(fileName, storeSequences));
+                    if (!storeSequences && BgzfFile.forFile(fileName) == null) {
+                        System.out.println();
+                        System.out.println("File " + fileName + " is not in BGZF format, so its sequences will be loaded into memory.");
+                    }
+                } else {
+                    long[] borders = partBorders(fileName, threadCount);
+                    for (int i = 0; i + 1 < borders.length; i++) {
+                        long start = borders[i];
+                        long end = borders[i + 1];
+                        fileParts.add(() -> parsePart(fileName, start, end, storeSequences));
+                    }
+                }
+            }
+            catch (IOException e) {
+                fileParts = null;
+            }
+            parts.add(fileParts);
+            if (fileParts != null) {partCount += fileParts.size();}
+        }
+
+        //One part is parsed without the pool
+        List<List<FastaData>> loaded = new ArrayList<>();
+        ExecutorService pool = partCount > 1 ? Executors.newFixedThreadPool(Math.min(threadCount, partCount)) : null;
+        try {
+            List<List<Future<List<FastaData>>>> futures = new ArrayList<>();
+            for (List<Callable<List<FastaData>>> fileParts : parts) {
+                if (fileParts == null || pool == null) {
+                    futures.add(null);
+                    continue;
+                }
+                List<Future<List<FastaData>>> fileFutures = new ArrayList<>();
+                for (Callable<List<FastaData>> part : fileParts) {
+                    fileFutures.add(pool.submit(part));
+                }
+                futures.add(fileFutures);
+            }
+
+            for (int i = 0; i < parts.size(); i++) {
+                if (parts.get(i) == null) {
+                    loaded.add(null);
+                    continue;
+                }
+                List<FastaData> molecules = new ArrayList<>();
+                try {
+                    for (int j = 0; j < parts.get(i).size(); j++) {
+                        molecules.addAll(pool == null ? parts.get(i).get(j).call() : futures.get(i).get(j).get());
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    molecules = null;
+                }
+                //Exceptions of the parsing (IOException, possibly wrapped in ExecutionException)
+                catch (Exception e) {
+                    molecules = null;
+                }
+                if (molecules != null && storeSequences && !fromSnapshot[i]) {saveSnapshot(fileNames[i], molecules);}
+                loaded.add(molecules);
+            }
+        }
+        finally {
+            if (pool != null) {pool.shutdown();}
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads the file from its snapshot. Damaged snapshot (e.g. from a program which was stopped while saving it) is deleted
+     * and the file is parsed again as one part.
+     * @param fileName Name of the file.
+     * @return Molecules from the file.
+     * @throws IOException Reading of the file.
+     */
+    private static List<FastaData> loadSnapshot(String fileName) throws IOException {
+        try {
+            return FastaSnapshot.load(fileName);
+        }
+        //Truncated snapshot can also fail on the buffers (BufferUnderflowException, IllegalArgumentException)
+        catch (IOException | RuntimeException e) {
+            FastaSnapshot.delete(fileName);
+        }
+        List<FastaData> molecules = BgzfFile.isGzip(fileName) ? parseCompressed(fileName, true)
+                : parsePart(fileName, 0, Files.size(Paths.get("InputFiles", fileName)), true);
+        saveSnapshot(fileName, molecules);
+        return molecules;
+    }
+
+    /**
+     * Saves the snapshot of the parsed file, so next loading of the file does not have to parse it.
+     * @param fileName Name of the file.
+     * @param molecules Molecules from the file.
+     */
+    private static void saveSnapshot(String fileName, List<FastaData> molecules) {
+        try {
+            FastaSnapshot.save(fileName, molecules);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Snapshot of the file " + fileName + " could not be saved.");
+        }
+    }
+
+    /**
+     * Splits the file into parts. Every part starts at the beginning of the file or at the description line of a molecule.
+     * @param fileName Name of the file.
+     * @param maxParts Maximal number of parts.
+     * @return Positions of borders of the parts, including 0 and size of the file.
+     * @throws IOException Reading of the file.
+     */
+    private static long[] partBorders(String fileName, int maxParts) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get("InputFiles", fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int parts = (int) Math.max(1, Math.min(maxParts, size / PART_SIZE));
+            List<Long> borders = new ArrayList<>();
+            borders.add(0L);
+            for (int i = 1; i < parts; i++) {
+                long border = nextMoleculeStart(channel, Math.max(size / parts * i, borders.get(borders.size() - 1) + 1), size);
+                if (border < size) {borders.add(border);}
+            }
+            borders.add(size);
+
+            long[] result = new long[borders.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = borders.get(i);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Finds the first description line starting after the position.
+     * @param channel Channel of the opened file.
+     * @param position Position from which the line is searched, at least 1.
+     * @param size Size of the file.
+     * @return Position of the '>' character or size of the file if there is no other molecule.
+     * @throws IOException Reading of the file.
+     */
+    private static long nextMoleculeStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long current = position - 1;
+        byte previous = 0;
+        while (current < size) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read <= 0) {break;}
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b == '>' && previous == '\n') {return current + i;}
+                previous = b;
+            }
+            current += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses one part of the file.
+     * @param fileName Name of the file.
+     * @param start Position of the first byte of the part.
+     * @param end Position after the last byte of the part.
+     * @param storeSequences True if sequences should be stored.
+     * @return Molecules from the part.
+     * @throws IOException Reading of the file.
+     */
+    private static List<FastaData> parsePart(String fileName, long start, long end, boolean storeSequences) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get("InputFiles", fileName), StandardOpenOption.READ)) {
+            return FastaStreamParser.parse(new PartInputStream(channel, start, end), start, fileName, storeSequences);
+        }
+    }
+
+    /**
+     * Parses file compressed by gzip. Blocks of BGZF files are decompressed in parallel and sequences can stay in the file,
+     * other gzip files have to be decompressed sequentially and their sequences are always stored.
+     * @param fileName Name of the file.
+     * @param storeSequences True if sequences should be stored.
+     * @return Molecules from the file.
+     * @throws IOException Reading of the file.
+     */
+    private static List<FastaData> parseCompressed(String fileName, boolean storeSequences) throws IOException {
+        BgzfFile bgzf = BgzfFile.forFile(fileName);
+        if (bgzf != null) {
+            try (InputStream input = bgzf.openStream(0)) {
+                return FastaStreamParser.parse(input, 0, fileName, storeSequences);
+            }
+        }
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(Paths.get("InputFiles", fileName)), 1 << 16)) {
+            return FastaStreamParser.parse(input, 0, fileName, true);
+        }
+    }
+
+    /**
+     * Stream reading only part of the file.
+     */
+    private static class PartInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        PartInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (position >= end) {return -1;}
+            int read = channel.read(ByteBuffer.wrap(bytes, offset, (int) Math.min(length, end - position)), position);
+            if (read > 0) {position += read;}
+            return read;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Substitution matrix (e.g. BLOSUM62) loaded from the InputFiles/ScoringMatrices directory. Residues are encoded by their index in the
+ * header of the matrix, residues which are not in the header get one extra index scored by the lowest value of the matrix.
+ */
+public class ScoringMatrix {
+
+    private final char[] header;
+    private final int[][] scores;
+    /**
+     * Scores including the extra index for unknown residues.
+     */
+    private final int[][] extendedScores;
+    private final int[] asciiIndices = new int[128];
+
+    private ScoringMatrix(char[] header, int[][] scores) {
+        this.header = header;
+        this.scores = scores;
+
+        int minimum = 0;
+        for (int[] row : scores) {
+            for (int value : row) {
+                minimum = Math.min(minimum, value);
+            }
+        }
+        this.extendedScores = new int[header.length + 1][header.length + 1];
+        for (int i = 0; i <= header.length; i++) {
+            for (int j = 0; j <= header.length; j++) {
+                extendedScores[i][j] = i < header.length && j < header.length ? scores[i][j] : minimum;
+            }
+        }
+
+        for (int i = 0; i < 128; i++) {
+            asciiIndices[i] = header.length;
+        }
+        for (int i = 0; i < header.length; i++) {
+            asciiIndices[Character.toUpperCase(header[i])] = i;
+            asciiIndices[Character.toLowerCase(header[i])] = i;
+        }
+    }
+
+    public char[] getHeader() { return header; }
+    public int[][] getScores() { return scores; }
+    /**
+     * @return Number of indices including the one for unknown residues.
+     */
+    public int size() { return header.length + 1; }
+
+    /**
+     * Loads scoring matrix from the file. First line contains residues, every other line contains residue and its scores.
+     * @param matrixName Name of the file in the InputFiles/ScoringMatrices directory without the .txt extension.
+     * @return Loaded scoring matrix.
+     * @throws IOException Opening or reading the file.
+     */
+    public static ScoringMatrix load(String matrixName) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader("InputFiles/ScoringMatrices/" + matrixName + ".txt"))) {
+            String line = reader.readLine();
+            if (line == null) {throw new IOException("Empty scoring matrix.");}
+            char[] header = line.replaceAll(" ", "").toCharArray();
+            int[][] scores = new int[header.length][header.length];
+            int index = 0;
+            //Parsing from file. Always should have structure for this.
+            while ((line = reader.readLine()) != null && index < header.length) {
+                if (line.trim().isEmpty()) {continue;}
+                String[] ar = line.trim().split(" +");
+                for (int i = 1; i < ar.length && i <= header.length; i++) {
+                    scores[index][i - 1] = Integer.parseInt(ar[i]);
+                }
+                index++;
+            }
+            return new ScoringMatrix(header, scores);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException("Invalid value in the scoring matrix.", e);
+        }
+    }
+
+    /**
+     * Gets index of the residue.
+     * @param residue Residue in one-letter code, upper or lower case.
+     * @return Index in the header or size() - 1 for unknown residues.
+     */
+    public int indexOf(char residue) { return residue < 128 ? asciiIndices[residue] : header.length; }
+
+    /**
+     * Encodes the sequence into indices of the residues.
+     * @param sequence Sequence in question.
+     * @return Index of every residue.
+     */
+    public int[] encode(char[] sequence) {
+        int[] indices = new int[sequence.length];
+        for (int i = 0; i < sequence.length; i++) {
+            indices[i] = indexOf(sequence[i]);
+        }
+        return indices;
+    }
+
+    /**
+     * Gets scores of one residue with every residue.
+     * @param index Index of the residue.
+     * @return Scores indexed by the second residue, the array must not be changed.
+     */
+    public int[] row(int index) { return extendedScores[index]; }
+
+    public int score(char firstResidue, char secondResidue) { return extendedScores[indexOf(firstResidue)][indexOf(secondResidue)]; }
+}
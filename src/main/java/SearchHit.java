@@ -0,0 +1,30 @@
+/**
+ * Class used to store one molecule found by the similarity search (see SimilaritySearch). Positions are 0-based and inclusive.
+ */
+public class SearchHit {
+    private int molecule = -1;
+    private int score = 0;
+    private int seeds = 0;
+    private int queryStart = -1;
+    private int queryEnd = -1;
+    private int targetStart = -1;
+    private int targetEnd = -1;
+
+    public void setMolecule(int molecule) { this.molecule = molecule; }
+    /**
+     * @return Number of the molecule in the searched list.
+     */
+    public int getMolecule() { return molecule; }
+    public void setScore(int score) { this.score = score; }
+    public int getScore() { return score; }
+    public void setSeeds(int seeds) { this.seeds = seeds; }
+    public int getSeeds() { return seeds; }
+    public void setQueryStart(int queryStart) { this.queryStart = queryStart; }
+    public int getQueryStart() { return queryStart; }
+    public void setQueryEnd(int queryEnd) { this.queryEnd = queryEnd; }
+    public int getQueryEnd() { return queryEnd; }
+    public void setTargetStart(int targetStart) { this.targetStart = targetStart; }
+    public int getTargetStart() { return targetStart; }
+    public void setTargetEnd(int targetEnd) { this.targetEnd = targetEnd; }
+    public int getTargetEnd() { return targetEnd; }
+}
@@ -1,6 +1,10 @@
 import java.io.*;
+import java.math.BigInteger;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 public class SequenceAlignment {
 
@@ -22,13 +26,9 @@ public class SequenceAlignment {
             manageReadingSequences(fileNames);
         } else { return; }
 
-        //This class logic
-        calculateEditDistance();
-        if (userWantsAlignment()) {
-            printAlignments();
-        } else {
-            System.out.println();
-            System.out.println("Edit distance of your sequences is: " + dynamicDistanceMatrix[firstSeq.length][secondSeq.length]);
+        //Rest of the class logic
+        while (true) {
+            if (!runFunction(decideFunction())) {break;}
         }
 
     }
@@ -130,25 +130,67 @@ public class SequenceAlignment {
     }
 
     /**
-     * Checks if user wants to see all optimal alignments.
-     * @return True if yes, False if not.
+     * Communication with the user. Asks which function should be run.
+     * @return ID of the function (values 0 - 6), -1 for invalid input. Invalid inputs are handled in the 'runFunction' method.
      */
-    private static boolean userWantsAlignment() {
-        while (true) {
-            System.out.println();
-            System.out.println("Do you want all optimal alignments for these sequences? [ Y / n ]");
+    private static int decideFunction() {
+        System.out.println();
+        System.out.println("Please write the ID of the function which you want to run.");
+        System.out.println("Available functions are:");
+        System.out.println("0 - Stop this task.");
+        System.out.println("1 - Edit distance of the sequences.");
+        System.out.println("2 - All optimal alignments (whole matrix is stored, only for shorter sequences).");
+        System.out.println("3 - One optimal alignment in linear memory.");
+        System.out.println("4 - Edit distance up to a maximal distance.");
+        System.out.println("5 - Alignment scored by a scoring matrix with affine gaps.");
+        System.out.println("6 - Batch alignment of pairs from a FASTA file and a list of pairs.");
+
+        //Parsing function ID
+        try {
+            return Integer.parseInt(Controller.consoleInputReader.nextLine().trim());
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-            String consoleInput = Controller.consoleInputReader.nextLine();
-            if (consoleInput.contentEquals("Y") || consoleInput.contentEquals("y")) {
-                return true;
-            }
-            if (consoleInput.contentEquals("N") || consoleInput.contentEquals("n")) {
+    /**
+     * Main switch of the class. Only calls methods corresponding to their function ID.
+     * @param functionID ID of the function user wants to run.
+     * @return True if work within this task should continue, false if otherwise.
+     */
+    private static boolean runFunction(int functionID) {
+        switch (functionID){
+            case 0:
                 return false;
-            }
-
-            System.out.println();
-            System.out.println("Invalid response.");
+            case 1:
+                //Bit-parallel algorithm, the matrix is not stored
+                System.out.println();
+                System.out.println("Edit distance of your sequences is: " + MyersEditDistance.distance(firstSeq, secondSeq));
+                break;
+            case 2:
+                calculateEditDistance();
+                printAlignments();
+                dynamicDistanceMatrix = null;
+                break;
+            case 3:
+                printLinearSpaceAlignment();
+                break;
+            case 4:
+                printBandedDistance();
+                break;
+            case 5:
+                printScoredAlignment();
+                break;
+            case 6:
+                alignBatch();
+                break;
+            default:
+                System.out.println();
+                System.out.println("Invalid function ID");
+                break;
         }
+        return true;
     }
 
     /**
@@ -196,22 +238,59 @@ public class SequenceAlignment {
     }
 
     /**
-     * Logic behind printing all optimal alignments. Opens and closes the file for them.
+     * Logic behind printing optimal alignments. Counts them first, then asks how many of them should be printed and opens
+     * and closes the file for them.
      */
     private static void printAlignments() {
+        OptimalAlignments alignments = new OptimalAlignments(firstSeq, secondSeq, dynamicDistanceMatrix);
+        BigInteger count = alignments.count();
+        System.out.println();
+        System.out.println("Edit distance of your sequences is: " + alignments.getDistance());
+        System.out.println("Number of optimal alignments is: " + count);
+
+        //Which alignments should be printed
+        System.out.println();
+        System.out.println("Write N to print the first N alignments, 'R N' to print N random alignments or 'all' to print all alignments.");
+        String consoleInput = Controller.consoleInputReader.nextLine().trim();
+        boolean random = consoleInput.startsWith("R") || consoleInput.startsWith("r");
+        long limit;
+        try {
+            limit = consoleInput.equalsIgnoreCase("all") ? Long.MAX_VALUE : Long.parseLong((random ? consoleInput.substring(1) : consoleInput).trim());
+        }
+        catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 0) {
+            System.out.println();
+            System.out.println("Invalid number of alignments.");
+            return;
+        }
+
         //Deciding file name - base on date and time, so every file name is unique
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
         String formattedTime = dtf.format(LocalDateTime.now());
         System.out.println();
         System.out.println("Alignments will be printed into file OutputFiles/EDAlignments" + formattedTime + ".txt");
 
-        //Printing + recursion
-        StringBuilder firstSeqSB = new StringBuilder();
-        StringBuilder secondSeqSB = new StringBuilder();
+        //Alignments are enumerated lazily, only the printed ones are built
         try (BufferedWriter writer = new BufferedWriter(new FileWriter("OutputFiles/EDAlignments" + formattedTime + ".txt"))) {
-            writer.write("Edit distance of your sequences is: " + dynamicDistanceMatrix[firstSeq.length][secondSeq.length]);
+            writer.write("Edit distance of your sequences is: " + alignments.getDistance());
             writer.newLine();
-            recursiveBacktracking(writer, firstSeqSB, secondSeqSB, firstSeq.length, secondSeq.length);
+            writer.write("Number of optimal alignments is: " + count);
+            writer.newLine();
+            if (random) {
+                Random generator = new Random();
+                for (long i = 0; i < limit; i++) {
+                    StringBuilder[] alignment = alignments.randomAlignment(generator);
+                    printAlignmentIntoFile(writer, alignment[0], alignment[1]);
+                }
+            } else {
+                Iterator<StringBuilder[]> iterator = alignments.iterator();
+                for (long i = 0; i < limit && iterator.hasNext(); i++) {
+                    StringBuilder[] alignment = iterator.next();
+                    printAlignmentIntoFile(writer, alignment[0], alignment[1]);
+                }
+            }
         }
         catch (IOException e) {
             System.out.println();
@@ -220,68 +299,165 @@ public class SequenceAlignment {
     }
 
     /**
-     * Recursive backtracking through the matrix of dynamic programming.
-     * @param alignedFirstSeq StringBuilder for the first sequence.
-     * @param alignedSecondSeq StringBuilder for the second sequence.
-     * @param rowCoor First coordinate for the matrix.
-     * @param colCoor Second coordinate form the matrix.
-     * @throws IOException From calling printAlignmentIntoFile method. Handled by calling method.
+     * Asks for the maximal distance and prints edit distance of the sequences if it is not bigger.
      */
-    private static void recursiveBacktracking(BufferedWriter writer, StringBuilder alignedFirstSeq, StringBuilder alignedSecondSeq, int rowCoor, int colCoor) throws IOException {
-        //Upper left corner of matrix - alignment is complete, stops recursion
-        if (rowCoor == 0 && colCoor == 0) {
-            printAlignmentIntoFile(writer, alignedFirstSeq, alignedSecondSeq);
+    private static void printBandedDistance() {
+        System.out.println();
+        System.out.println("Write the maximal edit distance.");
+        int maxDistance;
+        try {
+            maxDistance = Integer.parseInt(Controller.consoleInputReader.nextLine().trim());
+        }
+        catch (NumberFormatException e) {
+            maxDistance = -1;
+        }
+        if (maxDistance < 0) {
+            System.out.println();
+            System.out.println("Invalid maximal distance.");
             return;
         }
 
-        //First line of matrix - only adds '-' into the first sequence
-        if (rowCoor == 0) {
-            alignedFirstSeq.append('-');
-            alignedSecondSeq.append(secondSeq[colCoor - 1]);
-            recursiveBacktracking(writer, alignedFirstSeq, alignedSecondSeq, rowCoor, colCoor - 1);
-            alignedFirstSeq.deleteCharAt(alignedFirstSeq.length() - 1);
-            alignedSecondSeq.deleteCharAt(alignedSecondSeq.length() - 1);
+        int distance = BandedEditDistance.distance(firstSeq, secondSeq, maxDistance);
+        System.out.println();
+        if (distance == BandedEditDistance.OVER_LIMIT) {
+            System.out.println("Edit distance of your sequences is > " + maxDistance);
+        } else {
+            System.out.println("Edit distance of your sequences is: " + distance);
+        }
+    }
+
+    /**
+     * Asks for the scoring matrix, gap penalties and type of the alignment and prints one optimal alignment scored by them.
+     */
+    private static void printScoredAlignment() {
+        //Getting scoring matrix from user
+        System.out.println();
+        System.out.println("Which scoring matrix do you want to use? Please have file containing it (.txt format) in the InputFiles/ScoringMatrices folder. [ e.g. BLOSUM62prot]");
+        ScoringMatrix matrix;
+        try {
+            matrix = ScoringMatrix.load(Controller.consoleInputReader.nextLine().trim());
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some error occurred. Make sure that you have file with scoring matrix in the right directory.");
             return;
         }
 
-        //First column of matrix - only adds '-' into the second sequence
-        if (colCoor == 0) {
-            alignedFirstSeq.append(firstSeq[rowCoor - 1]);
-            alignedSecondSeq.append('-');
-            recursiveBacktracking(writer, alignedFirstSeq, alignedSecondSeq, rowCoor - 1, colCoor);
-            alignedFirstSeq.deleteCharAt(alignedFirstSeq.length() - 1);
-            alignedSecondSeq.deleteCharAt(alignedSecondSeq.length() - 1);
+        //Getting gap penalties and type of the alignment
+        System.out.println();
+        System.out.println("Write the penalty for opening a gap and the penalty for extending it into separate lines. Please write values as positive integers (e.g. 11 and 1).");
+        int gapOpen;
+        int gapExtension;
+        try {
+            gapOpen = Integer.parseInt(Controller.consoleInputReader.nextLine().trim());
+            gapExtension = Integer.parseInt(Controller.consoleInputReader.nextLine().trim());
+        }
+        catch (NumberFormatException e) {
+            gapOpen = -1;
+            gapExtension = -1;
+        }
+        if (gapOpen <= 0 || gapExtension <= 0) {
+            System.out.println();
+            System.out.println("Invalid gap penalty.");
             return;
         }
+        System.out.println();
+        System.out.println("Do you want global alignment (G) or local alignment (L)? [ G / l ]");
+        String consoleInput = Controller.consoleInputReader.nextLine().trim();
+        boolean local = consoleInput.contentEquals("L") || consoleInput.contentEquals("l");
 
-        //If rowCoor and colCoor are > 0
-        //Check if path to the left is possible
-        if (dynamicDistanceMatrix[rowCoor][colCoor] == dynamicDistanceMatrix[rowCoor][colCoor - 1] + 1) {
-            alignedFirstSeq.append('-');
-            alignedSecondSeq.append(secondSeq[colCoor - 1]);
-            recursiveBacktracking(writer, alignedFirstSeq, alignedSecondSeq, rowCoor, colCoor - 1);
-            alignedFirstSeq.deleteCharAt(alignedFirstSeq.length() - 1);
-            alignedSecondSeq.deleteCharAt(alignedSecondSeq.length() - 1);
+        AffineAlignment alignment = local ? AffineAlignment.local(firstSeq, secondSeq, matrix, gapOpen, gapExtension)
+                : AffineAlignment.global(firstSeq, secondSeq, matrix, gapOpen, gapExtension);
+
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String formattedTime = dtf.format(LocalDateTime.now());
+        System.out.println();
+        System.out.println("Score of the alignment is: " + alignment.getScore());
+        System.out.println("Alignment will be printed into file OutputFiles/ScoredAlignment" + formattedTime + ".txt");
+
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("OutputFiles/ScoredAlignment" + formattedTime + ".txt"))) {
+            writer.write("Score of the " + (local ? "local" : "global") + " alignment is: " + alignment.getScore());
+            writer.newLine();
+            if (local) {
+                int firstLength = alignment.getAlignedFirstSeq().length() - countGaps(alignment.getAlignedFirstSeq());
+                int secondLength = alignment.getAlignedSecondSeq().length() - countGaps(alignment.getAlignedSecondSeq());
+                writer.write("Aligned residues of the first sequence: " + (alignment.getFirstStart() + 1) + " - " + (alignment.getFirstStart() + firstLength));
+                writer.newLine();
+                writer.write("Aligned residues of the second sequence: " + (alignment.getSecondStart() + 1) + " - " + (alignment.getSecondStart() + secondLength));
+                writer.newLine();
+            }
+            printAlignmentIntoFile(writer, alignment.getAlignedFirstSeq(), alignment.getAlignedSecondSeq());
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some problem with the file.");
         }
-        //Check if two letters should be aligned
-        if ((dynamicDistanceMatrix[rowCoor][colCoor] == dynamicDistanceMatrix[rowCoor - 1][colCoor - 1] && firstSeq[rowCoor - 1] == secondSeq[colCoor - 1])
-            || (dynamicDistanceMatrix[rowCoor][colCoor] == dynamicDistanceMatrix[rowCoor - 1][colCoor - 1] + 1 && firstSeq[rowCoor - 1] != secondSeq[colCoor - 1])) {
+    }
 
-            alignedFirstSeq.append(firstSeq[rowCoor - 1]);
-            alignedSecondSeq.append(secondSeq[colCoor - 1]);
-            recursiveBacktracking(writer, alignedFirstSeq, alignedSecondSeq, rowCoor - 1, colCoor - 1);
-            alignedFirstSeq.deleteCharAt(alignedFirstSeq.length() - 1);
-            alignedSecondSeq.deleteCharAt(alignedSecondSeq.length() - 1);
+    /**
+     * Asks for the FASTA file and the list of pairs and writes distance, identity and alignment (CIGAR) of every pair into a csv file.
+     */
+    private static void alignBatch() {
+        System.out.println();
+        System.out.println("Write the name of the FASTA file and the name of the file with pairs of identifiers (one pair per line) into separate lines. Both files have to be in the InputFiles directory.");
+        String fastaFile = Controller.consoleInputReader.nextLine().trim();
+        String pairFile = Controller.consoleInputReader.nextLine().trim();
+        List<FastaData> molecules = ParallelFastaLoader.loadFiles(new String[] {fastaFile}, true).get(0);
+        if (molecules == null) {
+            System.out.println();
+            System.out.println("Some error occurred. Probably invalid file name.");
+            return;
         }
-        //Check if path up is possible
-        if (dynamicDistanceMatrix[rowCoor][colCoor] == dynamicDistanceMatrix[rowCoor - 1][colCoor] + 1) {
-            alignedFirstSeq.append(firstSeq[rowCoor - 1]);
-            alignedSecondSeq.append('-');
-            recursiveBacktracking(writer, alignedFirstSeq, alignedSecondSeq, rowCoor - 1, colCoor);
-            alignedFirstSeq.deleteCharAt(alignedFirstSeq.length() - 1);
-            alignedSecondSeq.deleteCharAt(alignedSecondSeq.length() - 1);
+
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String fileName = "OutputFiles/BatchAlignment" + dtf.format(LocalDateTime.now()) + ".csv";
+        try (BufferedReader reader = new BufferedReader(new FileReader("InputFiles/" + pairFile));
+             BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            int aligned = BatchAlignment.alignPairs(molecules, reader, writer);
+            System.out.println();
+            System.out.println(aligned + " pairs were aligned, results were printed into file " + fileName);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some problem with the file. Probably invalid file name.");
         }
+        //Failure of some thread of the pool
+        catch (IllegalStateException e) {
+            System.out.println();
+            System.out.println("Some error occurred.");
+        }
+    }
+
+    private static int countGaps(StringBuilder alignedSeq) {
+        int gaps = 0;
+        for (int i = 0; i < alignedSeq.length(); i++) {
+            if (alignedSeq.charAt(i) == '-') {gaps++;}
+        }
+        return gaps;
+    }
 
+    /**
+     * Prints one optimal alignment computed by Hirschberg's algorithm, so the matrix of dynamic programming is not stored.
+     */
+    private static void printLinearSpaceAlignment() {
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String formattedTime = dtf.format(LocalDateTime.now());
+        System.out.println();
+        System.out.println("Alignment will be printed into file OutputFiles/EDAlignment" + formattedTime + ".txt");
+
+        StringBuilder[] alignment = HirschbergAligner.align(firstSeq, secondSeq);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter("OutputFiles/EDAlignment" + formattedTime + ".txt"))) {
+            writer.write("Edit distance of your sequences is: " + HirschbergAligner.distanceOf(alignment[0], alignment[1]));
+            writer.newLine();
+            printAlignmentIntoFile(writer, alignment[0], alignment[1]);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some problem with the file.");
+        }
     }
 
     /**
@@ -0,0 +1,69 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of sequences read from the files in indexed mode. Sequences are stored packed and the least recently used ones are
+ * removed when their total size exceeds the budget.
+ */
+public class SequenceCache {
+
+    private static long budget = 256L << 20;
+    private static long usedBytes = 0;
+    private static final LinkedHashMap<FastaData, PackedSequence> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Sets maximal size of cached sequences.
+     * @param bytes Size in bytes.
+     */
+    public static synchronized void setBudget(long bytes) {
+        budget = bytes;
+        evict();
+    }
+
+    public static synchronized long getBudget() { return budget; }
+
+    /**
+     * Gets the sequence only if it is cached.
+     * @param molecule Molecule in indexed mode.
+     * @return Cached sequence or null.
+     */
+    public static synchronized PackedSequence peek(FastaData molecule) { return cache.get(molecule); }
+
+    /**
+     * Gets the sequence from the cache or reads it from the file and caches it.
+     * @param molecule Molecule in indexed mode.
+     * @return Sequence of the molecule.
+     */
+    public static PackedSequence get(FastaData molecule) {
+        PackedSequence sequence = peek(molecule);
+        if (sequence != null) {return sequence;}
+
+        //File is read outside of the lock, so more threads can read at once
+        String read = FastaIndex.readSubsequence(molecule, 0, molecule.getSequenceLength());
+        sequence = PackedSequence.encode(read);
+        if (read.length() != molecule.getSequenceLength()) {return sequence;}
+
+        synchronized (SequenceCache.class) {
+            PackedSequence cached = cache.get(molecule);
+            if (cached != null) {return cached;}
+            if (sequence.memorySize() <= budget) {
+                cache.put(molecule, sequence);
+                usedBytes += sequence.memorySize();
+                evict();
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * Removes the least recently used sequences until the cache fits into the budget.
+     */
+    private static void evict() {
+        Iterator<Map.Entry<FastaData, PackedSequence>> iterator = cache.entrySet().iterator();
+        while (usedBytes > budget && iterator.hasNext()) {
+            usedBytes -= iterator.next().getValue().memorySize();
+            iterator.remove();
+        }
+    }
+}
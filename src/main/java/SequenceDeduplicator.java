@@ -0,0 +1,138 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Finds molecules with identical sequences (e.g. chains of homodimers in pdb derived fasta files). Sequences are identified by
+ * 128-bit hash of their packed residues. Identical stored sequences are replaced by one shared PackedSequence, so they use memory
+ * only once and pairwise computations can recognize identical pairs by comparing the references.
+ */
+public class SequenceDeduplicator {
+
+    /**
+     * Replaces identical stored sequences by one shared sequence. Molecules in indexed mode are skipped.
+     * @param molecules Loaded molecules.
+     * @return Number of bytes which are no longer used.
+     */
+    public static long deduplicate(List<FastaData> molecules) {
+        Map<SequenceKey, PackedSequence> interned = new HashMap<>();
+        long savedBytes = 0;
+        for (FastaData molecule : molecules) {
+            PackedSequence sequence = molecule.getPackedSequence();
+            if (sequence == null) {continue;}
+            SequenceKey key = new SequenceKey(sequence);
+            PackedSequence shared = interned.putIfAbsent(key, sequence);
+            //Different sequences with the same hash are kept separately
+            if (shared != null && shared != sequence && sameSequence(shared, sequence)) {
+                molecule.setPackedSequence(shared);
+                savedBytes += sequence.memorySize();
+            }
+        }
+        return savedBytes;
+    }
+
+    /**
+     * Groups molecules with identical sequences. Sequences of molecules in indexed mode are read through SequenceCache.
+     * Molecules with the same hash are compared with the first molecule of the group, so different sequences are never grouped.
+     * @param molecules Molecules in question.
+     * @return Groups with at least two molecules, in the order of their first molecules.
+     */
+    public static List<List<FastaData>> duplicateGroups(List<FastaData> molecules) {
+        //Groups of the molecules with the same hash, usually only one
+        Map<SequenceKey, List<List<FastaData>>> groups = new HashMap<>();
+        List<List<FastaData>> ordered = new ArrayList<>();
+        for (FastaData molecule : molecules) {
+            PackedSequence sequence = sequenceOf(molecule);
+            List<List<FastaData>> candidates = groups.computeIfAbsent(new SequenceKey(sequence), key -> new ArrayList<>());
+            List<FastaData> group = null;
+            for (List<FastaData> candidate : candidates) {
+                if (sameSequence(sequenceOf(candidate.get(0)), sequence)) {
+                    group = candidate;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+                candidates.add(group);
+                ordered.add(group);
+            }
+            group.add(molecule);
+        }
+
+        List<List<FastaData>> duplicates = new ArrayList<>();
+        for (List<FastaData> group : ordered) {
+            if (group.size() > 1) {duplicates.add(group);}
+        }
+        return duplicates;
+    }
+
+    private static PackedSequence sequenceOf(FastaData molecule) {
+        PackedSequence sequence = molecule.getPackedSequence();
+        return sequence == null ? SequenceCache.get(molecule) : sequence;
+    }
+
+    /**
+     * Compares the packed sequences, hash of the sequences can be the same for different sequences.
+     * @return True if the sequences have the same packing and residues.
+     */
+    private static boolean sameSequence(PackedSequence first, PackedSequence second) {
+        return first == second || first.length() == second.length() && first.getBitsPerResidue() == second.getBitsPerResidue()
+                && Arrays.equals(first.getWords(), second.getWords());
+    }
+
+    /**
+     * Checks whether two molecules share one stored sequence after deduplication.
+     * @param first First molecule.
+     * @param second Second molecule.
+     * @return True if sequences are known to be identical without comparing them.
+     */
+    public static boolean sharesSequence(FastaData first, FastaData second) {
+        return first.getPackedSequence() != null && first.getPackedSequence() == second.getPackedSequence();
+    }
+
+    /**
+     * 128-bit hash of the packed sequence together with its length and packing.
+     */
+    private static class SequenceKey {
+        private final long high;
+        private final long low;
+        private final int length;
+        private final int bitsPerResidue;
+
+        SequenceKey(PackedSequence sequence) {
+            //Two independent 64-bit hashes of the words
+            long h1 = 0x9E3779B97F4A7C15L;
+            long h2 = 0xC2B2AE3D27D4EB4FL;
+            for (long word : sequence.getWords()) {
+                h1 = mix(h1 ^ word) * 0x87C37B91114253D5L;
+                h2 = mix(h2 + Long.rotateLeft(word, 31)) * 0x4CF5AD432745937FL;
+            }
+            this.high = mix(h1 ^ sequence.length());
+            this.low = mix(h2 ^ sequence.getBitsPerResidue());
+            this.length = sequence.length();
+            this.bitsPerResidue = sequence.getBitsPerResidue();
+        }
+
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xFF51AFD7ED558CCDL;
+            value ^= value >>> 33;
+            value *= 0xC4CEB9FE1A85EC53L;
+            value ^= value >>> 33;
+            return value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof SequenceKey)) {return false;}
+            SequenceKey key = (SequenceKey) other;
+            return high == key.high && low == key.low && length == key.length && bitsPerResidue == key.bitsPerResidue;
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(high, low); }
+    }
+}
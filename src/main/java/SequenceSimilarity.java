@@ -1,10 +1,27 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class SequenceSimilarity {
 
     private static String firstMoleculeIdentifier = "";
     private static String secondMoleculeIdentifier = "";
+    /**
+     * Index of the sequences searched by the last neighbour search, used again for the same molecules and distance.
+     */
+    private static HammingNeighbourIndex neighbourIndex = null;
+    /**
+     * MinHash sketches of the molecules, saved into the OutputFiles directory and used again for the same molecules and parameters.
+     */
+    private static MinHashSketches sketches = null;
+    private static final String SKETCH_FILE = "OutputFiles/MinHashSketches.bin";
 
     /**
      * Mani function if this class. Responsible for its basic logic.
@@ -56,34 +73,49 @@ public class SequenceSimilarity {
 
     /**
      * Used to read and decide the function ID. Also stores identifiers of the sequences.
-     * @return ID of the function (values 0 - 1). Invalid inputs (bigger function ID or missing identifier) are handled in the 'runFunction' method.
+     * @return ID of the function (values 0 - 4). Invalid inputs (bigger function ID or missing identifier) are handled in the 'runFunction' method.
      */
     private static int decideFunction() {
         System.out.println();
-        System.out.println("Please write the function ID and unique identifier of two molecules into three separate lines.");
+        System.out.println("Please write the function ID and identifiers of the molecules into separate lines.");
         System.out.println("Available functions are:");
         System.out.println("0 - Stop this task.");
-        System.out.println("1 - Measure sequence similarity by Hamming distance.");
+        System.out.println("1 - Measure sequence similarity by Hamming distance (unique identifiers of two molecules).");
+        System.out.println("2 - Hamming distances of all pairs of molecules with the identifier ('>' for all molecules).");
+        System.out.println("3 - Find molecules with the identifier within Hamming distance of the query (identifier and query sequence).");
+        System.out.println("4 - Find similar pairs of molecules with the identifier by MinHash ('>' for all molecules).");
 
         //Parsing function ID
         int functionID = 0;
         try {
             functionID = Integer.parseInt(Controller.consoleInputReader.nextLine());
         }
-        catch (StringIndexOutOfBoundsException e) {
+        catch (NumberFormatException e) {
             System.out.println();
             System.out.println("Invalid ID was passed.");
-            return 2;
+            return -1;
         }
 
         //Parsing identifiers
-        if (functionID == 0) {
-            return 0;
-        } else {
-            firstMoleculeIdentifier = Controller.consoleInputReader.nextLine();
-            secondMoleculeIdentifier = Controller.consoleInputReader.nextLine();
-            return functionID;
+        switch (functionID) {
+            case 1:
+                firstMoleculeIdentifier = Controller.consoleInputReader.nextLine();
+                secondMoleculeIdentifier = Controller.consoleInputReader.nextLine();
+                break;
+            case 2:
+                firstMoleculeIdentifier = Controller.consoleInputReader.nextLine();
+                break;
+            case 3:
+                firstMoleculeIdentifier = Controller.consoleInputReader.nextLine();
+                secondMoleculeIdentifier = Controller.consoleInputReader.nextLine();
+                break;
+            case 4:
+                firstMoleculeIdentifier = Controller.consoleInputReader.nextLine();
+                break;
+            default:
+                break;
         }
+        return functionID;
     }
 
     /**
@@ -99,6 +131,15 @@ public class SequenceSimilarity {
                 printHammingDistance();
                 break;
             case 2:
+                printAllHammingDistances();
+                break;
+            case 3:
+                printNeighbours();
+                break;
+            case 4:
+                printSimilarPairs();
+                break;
+            case -1:
                 break;
             default:
                 System.out.println();
@@ -113,16 +154,10 @@ public class SequenceSimilarity {
      */
     private static void printHammingDistance() {
         //Find the molecules
-        FastaData firstMolecule = null;
-        FastaData secondMolecule = null;
-        for (FastaData molecule : Controller.fastaData ) {
-            if (firstMolecule == null && molecule.getDescription().contains(firstMoleculeIdentifier)) {
-                firstMolecule = molecule;
-            }
-            if (secondMolecule == null && molecule.getDescription().contains(secondMoleculeIdentifier)) {
-                secondMolecule = molecule;
-            }
-        }
+        List<FastaData> firstFound = FastaProcessor.findMolecules(firstMoleculeIdentifier);
+        List<FastaData> secondFound = FastaProcessor.findMolecules(secondMoleculeIdentifier);
+        FastaData firstMolecule = firstFound.isEmpty() ? null : firstFound.get(0);
+        FastaData secondMolecule = secondFound.isEmpty() ? null : secondFound.get(0);
 
         //If identifier was not found
         if (firstMolecule == null || secondMolecule == null) {
@@ -131,16 +166,56 @@ public class SequenceSimilarity {
             return;
         }
 
-        //Check whether sequences have the same length
+        //Sequences with different lengths are compared at every offset
         if (firstMolecule.getSequenceLength() != secondMolecule.getSequenceLength()) {
-            System.out.println();
-            System.out.println("These two molecules do not have same sequence length. Please choose molecules with sequences of the same length.");
+            printMismatchProfile(firstMolecule, secondMolecule);
         } else {
             System.out.println();
             System.out.println(calculateHammingDistance(firstMolecule, secondMolecule));
         }
     }
 
+    /**
+     * Prints the smallest Hamming distance of the shorter sequence placed at any offset along the longer sequence and writes
+     * distances for all offsets into the csv file in the OutputFiles directory.
+     * @param firstMolecule Stored data about first molecule.
+     * @param secondMolecule Stored data about second molecule.
+     */
+    private static void printMismatchProfile(FastaData firstMolecule, FastaData secondMolecule) {
+        boolean firstLonger = firstMolecule.getSequenceLength() > secondMolecule.getSequenceLength();
+        FastaData longer = firstLonger ? firstMolecule : secondMolecule;
+        FastaData shorter = firstLonger ? secondMolecule : firstMolecule;
+        MismatchProfile profile = MismatchProfile.compute(longer.getResidues(), shorter.getResidues());
+
+        System.out.println();
+        System.out.println("These two molecules do not have same sequence length, so the shorter sequence was compared at every offset of the longer one.");
+        System.out.println("Smallest Hamming distance: " + profile.getMinimum());
+        IntList offsets = profile.getBestOffsets();
+        StringBuilder positions = new StringBuilder();
+        for (int i = 0; i < offsets.size(); i++) {
+            positions.append(i == 0 ? "" : ", ").append(offsets.get(i) + 1);
+        }
+        System.out.println("Positions (1-based) in " + longer.getDescription().substring(1) + ": " + positions);
+
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String fileName = "OutputFiles/MismatchProfile" + dtf.format(LocalDateTime.now()) + ".csv";
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            writer.write("Position,Mismatches");
+            writer.newLine();
+            int[] mismatches = profile.getMismatches();
+            for (int i = 0; i < mismatches.length; i++) {
+                writer.write((i + 1) + "," + mismatches[i]);
+                writer.newLine();
+            }
+            System.out.println("Distances for all positions were printed into file " + fileName);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some error occurred.");
+        }
+    }
+
     /**
      * Calculates Hamming distance of two molecules.
      * @param firstMolecule Stored data about first molecule.
@@ -148,15 +223,234 @@ public class SequenceSimilarity {
      * @return Hamming distance.
      */
     private static int calculateHammingDistance(FastaData firstMolecule, FastaData secondMolecule) {
-        //Change to char[], so substring does not have to be called
-        char[] first = firstMolecule.getSequence().toCharArray();
-        char[] second = secondMolecule.getSequence().toCharArray();
+        //Identical sequences share one stored copy (see SequenceDeduplicator)
+        if (SequenceDeduplicator.sharesSequence(firstMolecule, secondMolecule)) {return 0;}
+
+        //Whole longs are compared at once
+        return HammingKernel.distance(firstMolecule, secondMolecule);
+    }
+
+    /**
+     * Calculates Hamming distances of all pairs of molecules with the identifier and writes them into the csv file in the OutputFiles
+     * directory. Whole matrix is written, or only pairs within the maximal distance if user specifies it.
+     */
+    private static void printAllHammingDistances() {
+        List<FastaData> molecules = FastaProcessor.findMolecules(firstMoleculeIdentifier);
+        HammingMatrix matrix;
+        try {
+            matrix = HammingMatrix.encode(molecules);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println();
+            System.out.println("Molecules with this identifier do not have same sequence length.");
+            return;
+        }
+
+        System.out.println();
+        System.out.println("Write the maximal distance of printed pairs, or nothing if the whole matrix should be printed.");
+        String input = Controller.consoleInputReader.nextLine();
+        int maxDistance = -1;
+        if (!input.isEmpty()) {
+            try {
+                maxDistance = Integer.parseInt(input);
+            }
+            catch (NumberFormatException e) {
+                System.out.println();
+                System.out.println("Invalid distance.");
+                return;
+            }
+        }
 
-        //Calculate Hamming distance
-        int hammingDist = 0;
-        for (int i = 0; i < first.length; i++) {
-            if (first[i] != second[i]) {hammingDist++;}
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String fileName = "OutputFiles/Hamming" + dtf.format(LocalDateTime.now()) + ".csv";
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            if (maxDistance >= 0) {
+                //Sparse list of pairs
+                IntList pairs = matrix.pairsWithin(maxDistance);
+                writer.write("First,Second,Distance");
+                writer.newLine();
+                for (int k = 0; k < pairs.size(); k += 3) {
+                    writer.write(csvName(molecules.get(pairs.get(k))) + "," + csvName(molecules.get(pairs.get(k + 1))) + "," + pairs.get(k + 2));
+                    writer.newLine();
+                }
+                System.out.println();
+                System.out.println(pairs.size() / 3 + " pairs were printed into file " + fileName);
+            } else {
+                //Whole matrix
+                int[] distances = matrix.condensedMatrix();
+                StringBuilder line = new StringBuilder("Molecule");
+                for (FastaData molecule : molecules) {
+                    line.append(',').append(csvName(molecule));
+                }
+                writer.write(line.toString());
+                writer.newLine();
+                for (int i = 0; i < molecules.size(); i++) {
+                    line.setLength(0);
+                    line.append(csvName(molecules.get(i)));
+                    for (int j = 0; j < molecules.size(); j++) {
+                        line.append(',').append(i == j ? 0 : distances[i < j ? matrix.index(i, j) : matrix.index(j, i)]);
+                    }
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+                System.out.println();
+                System.out.println("Matrix was printed into file " + fileName);
+            }
         }
-        return  hammingDist;
+        catch (IOException | IllegalArgumentException e) {
+            System.out.println();
+            System.out.println("Some error occurred.");
+        }
+    }
+
+    /**
+     * Prints molecules with the identifier stored in firstMoleculeIdentifier, which sequences are within the Hamming distance of the
+     * query sequence stored in secondMoleculeIdentifier.
+     */
+    private static void printNeighbours() {
+        System.out.println();
+        System.out.println("Write the maximal Hamming distance.");
+        int distance;
+        try {
+            distance = Integer.parseInt(Controller.consoleInputReader.nextLine());
+        }
+        catch (NumberFormatException e) {
+            distance = -1;
+        }
+        if (distance < 0) {
+            System.out.println();
+            System.out.println("Invalid distance.");
+            return;
+        }
+
+        //Index is built again only for other molecules or bigger distance
+        List<FastaData> molecules = FastaProcessor.findMolecules(firstMoleculeIdentifier);
+        if (neighbourIndex == null || !neighbourIndex.isIndexOf(molecules) || neighbourIndex.getMaxDistance() < distance) {
+            try {
+                neighbourIndex = HammingNeighbourIndex.build(molecules, distance);
+            }
+            catch (IllegalArgumentException e) {
+                System.out.println();
+                System.out.println("Molecules with this identifier do not have same sequence length.");
+                neighbourIndex = null;
+                return;
+            }
+        }
+        if (secondMoleculeIdentifier.length() != neighbourIndex.getSequenceLength()) {
+            System.out.println();
+            System.out.println("Query does not have the same length as the sequences of the molecules.");
+            return;
+        }
+
+        long[] found = neighbourIndex.find(secondMoleculeIdentifier, distance);
+        System.out.println();
+        System.out.println(found.length + " molecules were found.");
+        for (long neighbour : found) {
+            System.out.println(molecules.get((int) (neighbour >>> 32)).getDescription().substring(1) + " - distance " + (int) neighbour);
+        }
+    }
+
+    /**
+     * Finds pairs of molecules with the identifier, which have similar sets of k-mers (estimated by MinHash), and writes them into
+     * the csv file in the OutputFiles directory.
+     */
+    private static void printSimilarPairs() {
+        List<FastaData> molecules = FastaProcessor.findMolecules(firstMoleculeIdentifier);
+        int k;
+        int sketchSize;
+        double threshold;
+        try {
+            System.out.println();
+            System.out.println("Write the length of k-mers (1 - " + KmerIndex.MAX_K + "), size of the sketches and minimal similarity (0 - 1) into three separate lines.");
+            k = Integer.parseInt(Controller.consoleInputReader.nextLine());
+            sketchSize = Integer.parseInt(Controller.consoleInputReader.nextLine());
+            threshold = Double.parseDouble(Controller.consoleInputReader.nextLine());
+        }
+        catch (NumberFormatException e) {
+            k = -1;
+            sketchSize = -1;
+            threshold = -1;
+        }
+        if (k < 1 || k > KmerIndex.MAX_K || sketchSize < 1 || threshold < 0 || threshold > 1) {
+            System.out.println();
+            System.out.println("Invalid parameters.");
+            return;
+        }
+
+        try {
+            prepareSketches(molecules, k, sketchSize);
+        }
+        catch (IllegalArgumentException e) {
+            System.out.println();
+            System.out.println("Invalid parameters.");
+            return;
+        }
+        long[] pairs = sketches.similarPairs(threshold, sketches.bandsFor(threshold));
+
+        //Deciding file name - base on date and time, so every file name is unique
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+        String fileName = "OutputFiles/SimilarPairs" + dtf.format(LocalDateTime.now()) + ".csv";
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileName), 1 << 16)) {
+            writer.write("First,Second,Similarity");
+            writer.newLine();
+            for (long pair : pairs) {
+                int first = (int) (pair >>> 32);
+                int second = (int) pair;
+                writer.write(csvName(molecules.get(first)) + "," + csvName(molecules.get(second)) + ","
+                        + String.format(Locale.ROOT, "%.4f", sketches.similarity(first, second)));
+                writer.newLine();
+            }
+            System.out.println();
+            System.out.println(pairs.length + " pairs were printed into file " + fileName);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Some error occurred.");
+        }
+    }
+
+    /**
+     * Loads saved sketches if they belong to the molecules and have the same parameters. Otherwise computes the sketches and saves them.
+     * @param molecules Sketched molecules.
+     * @param k Length of the k-mers.
+     * @param sketchSize Size of the sketches.
+     * @throws IllegalArgumentException Sketches of all molecules would be too big for one array.
+     */
+    private static void prepareSketches(List<FastaData> molecules, int k, int sketchSize) {
+        if (sketches != null && sketches.isSketchOf(molecules) && sketches.getK() == k && sketches.getSketchSize() == sketchSize) {return;}
+
+        //Saved sketches
+        try {
+            if (Files.exists(Paths.get(SKETCH_FILE))) {
+                MinHashSketches saved = MinHashSketches.load(SKETCH_FILE);
+                if (saved != null && saved.isSketchOf(molecules) && saved.getK() == k && saved.getSketchSize() == sketchSize) {
+                    sketches = saved;
+                    return;
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Saved sketches could not be read, new sketches will be computed.");
+        }
+
+        sketches = MinHashSketches.build(molecules, k, sketchSize);
+        try {
+            sketches.save(SKETCH_FILE);
+        }
+        catch (IOException e) {
+            System.out.println();
+            System.out.println("Sketches could not be saved.");
+        }
+    }
+
+    /**
+     * Gets the description of the molecule (without '>') quoted for the csv file.
+     * @param molecule Molecule in question.
+     * @return Quoted description.
+     */
+    private static String csvName(FastaData molecule) {
+        return "\"" + molecule.getDescription().substring(1).replace("\"", "\"\"") + "\"";
     }
 }
\ No newline at end of file
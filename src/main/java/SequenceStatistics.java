@@ -0,0 +1,30 @@
+/**
+ * Class used to store composition statistics of one molecule (see CompositionStatistics).
+ */
+public class SequenceStatistics {
+    private FastaData molecule = null;
+    private int length = 0;
+    /**
+     * Counts of residues by their code in CompositionStatistics.ALPHABET, last value contains count of other characters.
+     */
+    private int[] residueCounts = null;
+    private boolean nucleotide = false;
+    private double gcContent = 0;
+    private double molecularWeight = 0;
+    private double lowComplexityFraction = 0;
+
+    public void setMolecule(FastaData molecule) { this.molecule = molecule; }
+    public FastaData getMolecule() { return molecule; }
+    public void setLength(int length) { this.length = length; }
+    public int getLength() { return length; }
+    public void setResidueCounts(int[] residueCounts) { this.residueCounts = residueCounts; }
+    public int[] getResidueCounts() { return residueCounts; }
+    public void setNucleotide(boolean nucleotide) { this.nucleotide = nucleotide; }
+    public boolean isNucleotide() { return nucleotide; }
+    public void setGcContent(double gcContent) { this.gcContent = gcContent; }
+    public double getGcContent() { return gcContent; }
+    public void setMolecularWeight(double molecularWeight) { this.molecularWeight = molecularWeight; }
+    public double getMolecularWeight() { return molecularWeight; }
+    public void setLowComplexityFraction(double lowComplexityFraction) { this.lowComplexityFraction = lowComplexityFraction; }
+    public double getLowComplexityFraction() { return lowComplexityFraction; }
+}
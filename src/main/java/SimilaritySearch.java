@@ -0,0 +1,249 @@
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Search of the molecules most similar to a query (seed and extend, similarly to BLAST). K-mers of the query are looked up in the
+ * index of k-mers (seeds), seeds of every molecule are grouped by their diagonals and seeds on near diagonals are chained. Only the
+ * molecules with the longest chains are aligned, by local alignment with affine gaps computed in the band of diagonals around
+ * the chain, so the search does not need dynamic programming over the whole database.
+ */
+public class SimilaritySearch {
+
+    /**
+     * Seeds are grouped by diagonals (position in the molecule - position in the query) into bins of this width. Chain consists
+     * of the seeds in two neighbouring bins, so seeds shifted by small gaps are chained together.
+     */
+    private static final int DIAGONAL_BIN = 16;
+    /**
+     * Number of diagonals added on both sides of the chain for the extension.
+     */
+    private static final int BAND = 16;
+    /**
+     * K-mers with more occurrences are not used as seeds (low complexity regions, very short k-mers).
+     */
+    private static final int MAX_SEED_OCCURRENCES = 1 << 16;
+    /**
+     * Minimal number of molecules aligned in the band, even if fewer of them are printed.
+     */
+    private static final int MIN_EXTENSIONS = 1000;
+    /**
+     * Gap penalties used with the scoring matrix (same as the default of BLAST with BLOSUM62).
+     */
+    public static final int GAP_OPEN = 11;
+    public static final int GAP_EXTENSION = 1;
+    private static final int MINUS_INFINITY = Integer.MIN_VALUE / 4;
+
+    /**
+     * Finds the molecules most similar to the query.
+     * @param molecules Searched molecules.
+     * @param index Index of k-mers of the molecules.
+     * @param query Sequence of the query.
+     * @param matrix Scoring matrix of the extension.
+     * @param maxHits Maximal number of returned molecules.
+     * @return Found molecules sorted by the score of the local alignment, the best first.
+     */
+    public static List<SearchHit> search(List<FastaData> molecules, KmerIndex index, String query, ScoringMatrix matrix, int maxHits) {
+        byte[] queryResidues = query.getBytes(StandardCharsets.ISO_8859_1);
+
+        //Seeds counted for every molecule and bin of diagonals
+        LongIntHashMap binNumbers = new LongIntHashMap(1 << 12);
+        LongList binKeys = new LongList();
+        IntList seedCounts = new IntList();
+        IntList lowestDiagonals = new IntList();
+        IntList highestDiagonals = new IntList();
+        index.findSeeds(queryResidues, MAX_SEED_OCCURRENCES, (queryPosition, molecule, position) -> {
+            int diagonal = position - queryPosition;
+            long key = ((long) molecule << 32) | (Math.floorDiv(diagonal, DIAGONAL_BIN) & 0xFFFFFFFFL);
+            int number = binNumbers.get(key);
+            if (number == -1) {
+                number = seedCounts.size();
+                binNumbers.put(key, number);
+                binKeys.add(key);
+                seedCounts.add(0);
+                lowestDiagonals.add(diagonal);
+                highestDiagonals.add(diagonal);
+            }
+            seedCounts.set(number, seedCounts.get(number) + 1);
+            lowestDiagonals.set(number, Math.min(lowestDiagonals.get(number), diagonal));
+            highestDiagonals.set(number, Math.max(highestDiagonals.get(number), diagonal));
+        });
+
+        //Best chain of every molecule - the bin and the next one
+        LongIntHashMap candidateNumbers = new LongIntHashMap(1 << 10);
+        IntList candidateMolecules = new IntList();
+        IntList chainSeeds = new IntList();
+        IntList chainLows = new IntList();
+        IntList chainHighs = new IntList();
+        for (int b = 0; b < binKeys.size(); b++) {
+            long key = binKeys.get(b);
+            int molecule = (int) (key >>> 32);
+            int seeds = seedCounts.get(b);
+            int low = lowestDiagonals.get(b);
+            int high = highestDiagonals.get(b);
+            int next = binNumbers.get(((long) molecule << 32) | (((int) key + 1) & 0xFFFFFFFFL));
+            if (next != -1) {
+                seeds += seedCounts.get(next);
+                high = highestDiagonals.get(next);
+            }
+
+            int candidate = candidateNumbers.get(molecule);
+            if (candidate == -1) {
+                candidateNumbers.put(molecule, candidateMolecules.size());
+                candidateMolecules.add(molecule);
+                chainSeeds.add(seeds);
+                chainLows.add(low);
+                chainHighs.add(high);
+            } else if (seeds > chainSeeds.get(candidate)) {
+                chainSeeds.set(candidate, seeds);
+                chainLows.set(candidate, low);
+                chainHighs.set(candidate, high);
+            }
+        }
+
+        //Molecules with the most seeds in the chain are extended, one seed is enough only for queries with one k-mer
+        int minSeeds = queryResidues.length > index.getK() ? 2 : 1;
+        long[] order = new long[candidateMolecules.size()];
+        int candidates = 0;
+        for (int c = 0; c < candidateMolecules.size(); c++) {
+            if (chainSeeds.get(c) >= minSeeds) {order[candidates++] = ((long) chainSeeds.get(c) << 32) | c;}
+        }
+        order = Arrays.copyOf(order, candidates);
+        Arrays.sort(order);
+
+        int[] queryIndices = matrix.encode(query.toCharArray());
+        List<SearchHit> hits = new ArrayList<>();
+        int extensions = Math.max(MIN_EXTENSIONS, 20 * maxHits);
+        for (int o = order.length - 1; o >= 0 && o >= order.length - extensions; o--) {
+            int candidate = (int) order[o];
+            int molecule = candidateMolecules.get(candidate);
+            SearchHit hit = extend(queryIndices, molecules.get(molecule).getResidues(), chainLows.get(candidate) - BAND,
+                    chainHighs.get(candidate) + BAND, matrix);
+            if (hit.getScore() <= 0) {continue;}
+            hit.setMolecule(molecule);
+            hit.setSeeds(chainSeeds.get(candidate));
+            hits.add(hit);
+        }
+
+        hits.sort((first, second) -> first.getScore() != second.getScore() ? Integer.compare(second.getScore(), first.getScore())
+                : Integer.compare(second.getSeeds(), first.getSeeds()));
+        return hits.size() > maxHits ? new ArrayList<>(hits.subList(0, maxHits)) : hits;
+    }
+
+    /**
+     * Local alignment with affine gaps (Smith-Waterman, Gotoh) computed only in the band of diagonals. Start of the best alignment
+     * is carried with the scores, so it is found without storing the matrix.
+     * @param query Query encoded by the scoring matrix.
+     * @param target Residues of the molecule.
+     * @param low Lowest diagonal of the band (position in the molecule - position in the query).
+     * @param high Highest diagonal of the band.
+     * @param matrix Scoring matrix.
+     * @return Score and positions of the best alignment in the band.
+     */
+    private static SearchHit extend(int[] query, byte[] target, int low, int high, ScoringMatrix matrix) {
+        low = Math.max(low, -query.length);
+        high = Math.min(high, target.length);
+        int width = high - low + 1;
+        SearchHit hit = new SearchHit();
+        if (width <= 0) {return hit;}
+
+        //Cell (i, j) is stored at the position j - i - low, the cell above is one position to the right
+        int[] previousScores = new int[width + 1];
+        int[] currentScores = new int[width + 1];
+        int[] previousVertical = new int[width + 1];
+        int[] currentVertical = new int[width + 1];
+        //Starts of the alignments ending in the cells, (position in the query << 32 | position in the molecule)
+        long[] previousStarts = new long[width + 1];
+        long[] currentStarts = new long[width + 1];
+        long[] previousVerticalStarts = new long[width + 1];
+        long[] currentVerticalStarts = new long[width + 1];
+        for (int d = 0; d <= width; d++) {
+            previousStarts[d] = start(0, low + d);
+            previousVertical[d] = MINUS_INFINITY;
+        }
+        currentVertical[width] = MINUS_INFINITY;
+
+        int best = 0;
+        long bestStart = 0;
+        int bestQueryEnd = -1;
+        int bestTargetEnd = -1;
+        for (int i = 1; i <= query.length; i++) {
+            int[] scores = matrix.row(query[i - 1]);
+            int horizontal = MINUS_INFINITY;
+            long horizontalStart = 0;
+            for (int d = 0; d < width; d++) {
+                int j = i + low + d;
+                //Cells outside of the matrix and the first column are starts of new alignments
+                if (j < 1 || j > target.length) {
+                    currentScores[d] = 0;
+                    currentStarts[d] = start(i, j);
+                    currentVertical[d] = MINUS_INFINITY;
+                    horizontal = MINUS_INFINITY;
+                    continue;
+                }
+
+                int left = d > 0 ? currentScores[d - 1] : 0;
+                if (left - GAP_OPEN >= horizontal - GAP_EXTENSION) {
+                    horizontal = left - GAP_OPEN;
+                    horizontalStart = d > 0 ? currentStarts[d - 1] : 0;
+                } else {horizontal -= GAP_EXTENSION;}
+                int up = previousScores[d + 1];
+                if (up - GAP_OPEN >= previousVertical[d + 1] - GAP_EXTENSION) {
+                    currentVertical[d] = up - GAP_OPEN;
+                    currentVerticalStarts[d] = previousStarts[d + 1];
+                } else {
+                    currentVertical[d] = previousVertical[d + 1] - GAP_EXTENSION;
+                    currentVerticalStarts[d] = previousVerticalStarts[d + 1];
+                }
+
+                int value = previousScores[d] + scores[matrix.indexOf((char) (target[j - 1] & 0xFF))];
+                long valueStart = previousStarts[d];
+                if (horizontal > value) {
+                    value = horizontal;
+                    valueStart = horizontalStart;
+                }
+                if (currentVertical[d] > value) {
+                    value = currentVertical[d];
+                    valueStart = currentVerticalStarts[d];
+                }
+                if (value <= 0) {
+                    value = 0;
+                    valueStart = start(i, j);
+                }
+                currentScores[d] = value;
+                currentStarts[d] = valueStart;
+                if (value > best) {
+                    best = value;
+                    bestStart = valueStart;
+                    bestQueryEnd = i - 1;
+                    bestTargetEnd = j - 1;
+                }
+            }
+            int[] swapScores = previousScores;
+            previousScores = currentScores;
+            currentScores = swapScores;
+            swapScores = previousVertical;
+            previousVertical = currentVertical;
+            currentVertical = swapScores;
+            long[] swapStarts = previousStarts;
+            previousStarts = currentStarts;
+            currentStarts = swapStarts;
+            swapStarts = previousVerticalStarts;
+            previousVerticalStarts = currentVerticalStarts;
+            currentVerticalStarts = swapStarts;
+        }
+
+        hit.setScore(best);
+        hit.setQueryStart((int) (bestStart >>> 32));
+        hit.setTargetStart((int) bestStart);
+        hit.setQueryEnd(bestQueryEnd);
+        hit.setTargetEnd(bestTargetEnd);
+        return hit;
+    }
+
+    /**
+     * @return Start of the alignment which begins with the residues after the cell (i, j), i.e. query[i] and molecule[j].
+     */
+    private static long start(int i, int j) { return ((long) i << 32) | (j & 0xFFFFFFFFL); }
+}
@@ -0,0 +1,97 @@
+/**
+ * Score of the local alignment (Smith-Waterman with affine gaps) computed in linear memory. Scores of every residue of the matrix
+ * with the query are precomputed (query profile), so the inner loop along the query reads them from one array instead of looking
+ * into the substitution matrix. Only one column of scores and horizontal gaps is stored.
+ * One instance aligns one query and keeps its buffers, so it must not be used by more threads at once.
+ */
+public class SmithWatermanKernel {
+
+    private final int queryLength;
+    private final ScoringMatrix matrix;
+    private final int gapOpen;
+    private final int gapExtension;
+    /**
+     * Scores of the residue r (index in the matrix) with every position of the query.
+     */
+    private final int[][] profile;
+
+    private final int[] scores;
+    private final int[] horizontalGaps;
+
+    private int queryEnd = -1;
+    private int targetEnd = -1;
+
+    /**
+     * Precomputes query profile.
+     * @param query Query sequence.
+     * @param matrix Substitution matrix.
+     * @param gapOpen Cost of the first residue of the gap (positive).
+     * @param gapExtension Cost of every other residue of the gap (positive).
+     */
+    public SmithWatermanKernel(char[] query, ScoringMatrix matrix, int gapOpen, int gapExtension) {
+        this.queryLength = query.length;
+        this.matrix = matrix;
+        this.gapOpen = gapOpen;
+        this.gapExtension = gapExtension;
+
+        int[] queryIndices = matrix.encode(query);
+        this.profile = new int[matrix.size()][query.length];
+        for (int residue = 0; residue < matrix.size(); residue++) {
+            int[] row = matrix.row(residue);
+            for (int i = 0; i < query.length; i++) {
+                profile[residue][i] = row[queryIndices[i]];
+            }
+        }
+        this.scores = new int[query.length];
+        this.horizontalGaps = new int[query.length];
+    }
+
+    /**
+     * @return Position (0-based) of the last aligned residue of the query in the best alignment of the last call, -1 if the score was 0.
+     */
+    public int getQueryEnd() { return queryEnd; }
+    /**
+     * @return Position (0-based) of the last aligned residue of the target in the best alignment of the last call, -1 if the score was 0.
+     */
+    public int getTargetEnd() { return targetEnd; }
+
+    /**
+     * Computes score of the best local alignment of the query and the target.
+     * @param target Target sequence.
+     * @return Score of the best local alignment (0 if no pair of residues has positive score).
+     */
+    public int score(char[] target) {
+        //Gaps below 0 cannot be a part of the local alignment, so 0 is used as the initial value
+        for (int i = 0; i < queryLength; i++) {
+            scores[i] = 0;
+            horizontalGaps[i] = 0;
+        }
+        int best = 0;
+        queryEnd = -1;
+        targetEnd = -1;
+
+        //One column for every residue of the target
+        for (int j = 0; j < target.length; j++) {
+            int[] residueProfile = profile[matrix.indexOf(target[j])];
+            int diagonal = 0;
+            int above = 0;
+            int vertical = 0;
+            for (int i = 0; i < queryLength; i++) {
+                int left = scores[i];
+                int horizontal = Math.max(horizontalGaps[i] - gapExtension, left - gapOpen);
+                horizontalGaps[i] = horizontal;
+                vertical = Math.max(vertical - gapExtension, above - gapOpen);
+                int value = Math.max(Math.max(diagonal + residueProfile[i], 0), Math.max(horizontal, vertical));
+                diagonal = left;
+                scores[i] = value;
+                above = value;
+                if (value > best) {
+                    best = value;
+                    queryEnd = i;
+                    targetEnd = j;
+                }
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Random;
+
+/**
+ * Small benchmark of HammingKernel against the scalar char loop. Run with the test classpath, e.g.
+ * java -cp target/classes:target/test-classes HammingKernelBenchmark [length] [repetitions]
+ */
+public class HammingKernelBenchmark {
+
+    public static void main(String[] args) {
+        int length = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random random = new Random(42);
+
+        System.out.println("Length " + length + ", best of " + repetitions + " repetitions:");
+        run("nucleotides (2 bits)", sequencePair(random, "ACGT", length), repetitions);
+        run("residues (5 bits)", sequencePair(random, "ACDEFGHIKLMNPQRSTVWY", length), repetitions);
+        run("other (8 bits)", sequencePair(random, "acgtnACGTN", length), repetitions);
+    }
+
+    /**
+     * Measures the char loop and the kernel on the pair and checks that both give the same distance.
+     */
+    private static void run(String name, String[] pair, int repetitions) {
+        FastaData first = molecule(pair[0]);
+        FastaData second = molecule(pair[1]);
+        char[] firstChars = pair[0].toCharArray();
+        char[] secondChars = pair[1].toCharArray();
+
+        long charTime = Long.MAX_VALUE;
+        long kernelTime = Long.MAX_VALUE;
+        int charDistance = 0;
+        int kernelDistance = 0;
+        for (int r = 0; r < repetitions; r++) {
+            long start = System.nanoTime();
+            charDistance = charDistance(firstChars, secondChars);
+            charTime = Math.min(charTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            kernelDistance = HammingKernel.distance(first, second);
+            kernelTime = Math.min(kernelTime, System.nanoTime() - start);
+        }
+        if (charDistance != kernelDistance) {throw new IllegalStateException("Distances differ: " + charDistance + " " + kernelDistance);}
+        System.out.printf("%-22s char loop %8.3f ms, kernel %8.3f ms%n", name, charTime / 1e6, kernelTime / 1e6);
+    }
+
+    private static int charDistance(char[] first, char[] second) {
+        int distance = 0;
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] != second[i]) {distance++;}
+        }
+        return distance;
+    }
+
+    /**
+     * Creates a random sequence and its copy with about 10 % of changed positions.
+     */
+    private static String[] sequencePair(Random random, String alphabet, int length) {
+        char[] first = new char[length];
+        char[] second = new char[length];
+        for (int i = 0; i < length; i++) {
+            first[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+            second[i] = random.nextInt(10) == 0 ? alphabet.charAt(random.nextInt(alphabet.length())) : first[i];
+        }
+        return new String[] {new String(first), new String(second)};
+    }
+
+    private static FastaData molecule(String sequence) {
+        FastaData molecule = new FastaData();
+        molecule.setDescription(">benchmark");
+        molecule.setSequenceLength(sequence.length());
+        molecule.setSequence(sequence);
+        return molecule;
+    }
+}
@@ -0,0 +1,164 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the word kernels of HammingKernel with the scalar char loop which was used before them.
+ */
+public class HammingKernelTest {
+
+    private static final String NUCLEOTIDES = "ACGT";
+    private static final String RESIDUES = "ABCDEFGHIJKLMNOPQRSTUVWXYZ*-";
+    private static final String OTHER = "ACGTacgtnNxX.?~";
+    /**
+     * Lengths around the sizes of one long for 2, 5 and 8 bits per residue.
+     */
+    private static final int[] EDGE_LENGTHS = {0, 1, 2, 7, 8, 9, 11, 12, 13, 15, 16, 17, 23, 24, 25, 31, 32, 33, 63, 64, 65, 96, 97, 1000};
+    private static final int RANDOM_ROUNDS = 200;
+
+    @Test
+    public void packedNucleotidesMatchCharLoop() {
+        checkAlphabets(NUCLEOTIDES, NUCLEOTIDES, 2, 2);
+    }
+
+    @Test
+    public void packedResiduesMatchCharLoop() {
+        checkAlphabets(RESIDUES, RESIDUES, 5, 5);
+    }
+
+    @Test
+    public void unpackedResiduesMatchCharLoop() {
+        checkAlphabets(OTHER, OTHER, 8, 8);
+    }
+
+    @Test
+    public void mixedPackingMatchesCharLoop() {
+        checkAlphabets(NUCLEOTIDES, RESIDUES, 2, 5);
+        checkAlphabets(RESIDUES, OTHER, 5, 8);
+        checkAlphabets(NUCLEOTIDES, OTHER, 2, 8);
+    }
+
+    @Test
+    public void identicalAndCompletelyDifferentSequences() {
+        for (int length : EDGE_LENGTHS) {
+            String sequence = randomSequence(new Random(length), NUCLEOTIDES, length);
+            FastaData molecule = molecule(sequence);
+            assertEquals(0, HammingKernel.distance(molecule, molecule(sequence)));
+            assertEquals(0, HammingKernel.distance(molecule.getPackedSequence(), molecule.getPackedSequence()));
+            assertEquals(length, HammingKernel.distance(molecule(repeat('A', length)), molecule(repeat('C', length))));
+            assertEquals(length, HammingKernel.distance(molecule(repeat('W', length)), molecule(repeat('Y', length))));
+            assertEquals(length, HammingKernel.distance(molecule(repeat('a', length)), molecule(repeat('b', length))));
+        }
+    }
+
+    @Test
+    public void windowsWithLimitMatchCharLoop() {
+        Random random = new Random(7);
+        for (int round = 0; round < RANDOM_ROUNDS; round++) {
+            String first = randomSequence(random, OTHER, 1 + random.nextInt(200));
+            String second = randomSequence(random, OTHER, 1 + random.nextInt(200));
+            int length = random.nextInt(Math.min(first.length(), second.length()) + 1);
+            int firstOffset = random.nextInt(first.length() - length + 1);
+            int secondOffset = random.nextInt(second.length() - length + 1);
+            int limit = random.nextInt(length + 1);
+            int expected = charDistance(first.substring(firstOffset, firstOffset + length), second.substring(secondOffset, secondOffset + length));
+
+            int distance = HammingKernel.distance(first.getBytes(StandardCharsets.ISO_8859_1), firstOffset,
+                    second.getBytes(StandardCharsets.ISO_8859_1), secondOffset, length, limit);
+            //Distance over the limit does not have to be exact
+            if (expected <= limit) {
+                assertEquals(expected, distance);
+            } else {
+                assertTrue(distance > limit);
+            }
+        }
+    }
+
+    /**
+     * Compares random pairs and pairs differing in few positions with the char loop.
+     * @param firstAlphabet Residues of the first sequences.
+     * @param secondAlphabet Residues of the second sequences.
+     * @param firstBits Expected packing of the first sequences.
+     * @param secondBits Expected packing of the second sequences.
+     */
+    private static void checkAlphabets(String firstAlphabet, String secondAlphabet, int firstBits, int secondBits) {
+        Random random = new Random(firstAlphabet.length() * 31 + secondAlphabet.length());
+        for (int length : EDGE_LENGTHS) {
+            for (int round = 0; round < RANDOM_ROUNDS / 10; round++) {
+                String first = withResidue(random, randomSequence(random, firstAlphabet, length), firstAlphabet, firstBits);
+                String second = random.nextBoolean() || firstBits != secondBits ? randomSequence(random, secondAlphabet, length)
+                        : mutate(random, first, secondAlphabet);
+                second = withResidue(random, second, secondAlphabet, secondBits);
+                FastaData firstMolecule = molecule(first);
+                FastaData secondMolecule = molecule(second);
+                if (length > 0) {
+                    assertEquals(firstBits, firstMolecule.getPackedSequence().getBitsPerResidue());
+                    assertEquals(secondBits, secondMolecule.getPackedSequence().getBitsPerResidue());
+                }
+
+                String message = "length " + length + ": " + first + " / " + second;
+                assertEquals(charDistance(first, second), HammingKernel.distance(firstMolecule, secondMolecule), message);
+                assertEquals(charDistance(first, second), HammingKernel.distance(first.getBytes(StandardCharsets.ISO_8859_1),
+                        second.getBytes(StandardCharsets.ISO_8859_1)), message);
+            }
+        }
+    }
+
+    /**
+     * Hamming distance computed char by char, as it was computed before HammingKernel.
+     */
+    private static int charDistance(String first, String second) {
+        int distance = 0;
+        for (int i = 0; i < first.length(); i++) {
+            if (first.charAt(i) != second.charAt(i)) {distance++;}
+        }
+        return distance;
+    }
+
+    private static FastaData molecule(String sequence) {
+        FastaData molecule = new FastaData();
+        molecule.setDescription(">test");
+        molecule.setSequenceLength(sequence.length());
+        molecule.setSequence(sequence);
+        return molecule;
+    }
+
+    private static String randomSequence(Random random, String alphabet, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sequence.toString();
+    }
+
+    /**
+     * Changes few random positions of the sequence, so also small distances are tested.
+     */
+    private static String mutate(Random random, String sequence, String alphabet) {
+        char[] residues = sequence.toCharArray();
+        int changes = residues.length == 0 ? 0 : random.nextInt(Math.min(residues.length, 4) + 1);
+        for (int c = 0; c < changes; c++) {
+            residues[random.nextInt(residues.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+        }
+        return new String(residues);
+    }
+
+    /**
+     * Puts a residue which needs the whole alphabet at a random position, so the sequence gets the expected packing.
+     */
+    private static String withResidue(Random random, String sequence, String alphabet, int bits) {
+        if (sequence.isEmpty() || bits == 2) {return sequence;}
+        char residue = bits == 5 ? 'W' : 'x';
+        if (alphabet.indexOf(residue) < 0) {return sequence;}
+        int position = random.nextInt(sequence.length());
+        return sequence.substring(0, position) + residue + sequence.substring(position + 1);
+    }
+
+    private static String repeat(char residue, int length) {
+        return String.valueOf(residue).repeat(length);
+    }
+}